@@ -0,0 +1,70 @@
+/*
+	This program and the accompanying materials are made available under the terms of the MIT
+	license (X11 license) which accompanies this distribution.
+	
+	Author: Christoff Bürger
+*/
+
+package pmchess.logic;
+
+/*
+	Fixed positions of the benchmarks, selected by name (the value of the benchmarks' 'position'
+	parameter). Positions are given in Forsyth-Edwards Notation, except for 'game' which is
+	reached by playing 'game_moves' from the initial position, such that it has a history with
+	repetitions (cf. 'Board.draw_repetition_status').
+*/
+public final class BenchmarkPositions
+{
+	private BenchmarkPositions() // No instances.
+	{
+	}
+	
+	private static final String[][] positions =
+		{
+			  {"start", "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1"}
+			, {"middlegame", "r1bq1rk1/pp2bppp/2n1pn2/3p4/2PP4/2N1PN2/PP3PPP/R2QKB1R w KQ - 0 8"}
+			, {"kiwipete", "r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - 0 1"}
+			, {"endgame", "8/2p5/3p4/KP5r/1R3p1k/8/4P1P1/8 w - - 0 1"}
+		};
+	
+	private static final String[] game_moves =
+		{
+			  "e2e4", "e7e5", "g1f3", "b8c6", "f1c4", "f8c5", "c2c3", "g8f6", "d2d3", "d7d6"
+			, "e1g1", "e8g8", "f3g5", "f6g4", "g5f3", "g4f6", "f3g5", "f6g4", "g5f3", "g4f6"
+		};
+	
+	public static Board board(final String position)
+	{
+		if (position.equals("game"))
+		{
+			final var board =
+				new Board();
+			for (final var move : game_moves)
+			{
+				final var x =
+					move.charAt(0) - 'a';
+				final var y =
+					move.charAt(1) - '1';
+				if (!board.execute(
+					  x
+					, y
+					, move.charAt(2) - 'a'
+					, move.charAt(3) - '1'
+					, board.figure(x, y)
+					, false))
+				{
+					throw new IllegalArgumentException("ERROR: Invalid benchmark move " + move + ".");
+				}
+			}
+			return board;
+		}
+		for (final var entry : positions)
+		{
+			if (entry[0].equals(position))
+			{
+				return Board.fen(entry[1]);
+			}
+		}
+		throw new IllegalArgumentException("ERROR: Unknown benchmark position " + position + ".");
+	}
+}
@@ -0,0 +1,107 @@
+/*
+	This program and the accompanying materials are made available under the terms of the MIT
+	license (X11 license) which accompanies this distribution.
+	
+	Author: Christoff Bürger
+*/
+
+package pmchess.logic;
+
+import java.util.concurrent.*;
+
+import org.openjdk.jmh.annotations.*;
+
+/*
+	Benchmarks of the move generation and game status analysis of 'Board'. Benchmarks iterating
+	the legal moves of a position report the average time per position, not per move.
+*/
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BoardBenchmark
+{
+	@Param({"start", "middlegame", "kiwipete", "endgame", "game"})
+	public String position;
+	
+	private Board board;
+	private int[] legal_moves;
+	
+	@Setup public void setup()
+	{
+		board = BenchmarkPositions.board(position);
+		legal_moves = board.legal_moves();
+	}
+	
+	/*
+		Execute and undo each legal move. Consecutive moves differ, such that each execution
+		computes the possible moves of its successor position.
+	*/
+	@Benchmark public int execute_undo()
+	{
+		var executed = 0;
+		for (final var move : legal_moves)
+		{
+			if (board.execute(move))
+			{
+				board.undo();
+				executed++;
+			}
+		}
+		return executed;
+	}
+	
+	@Benchmark public int moves_compute_possible()
+	{
+		board.moves_compute_possible();
+		return board.moves_possible_count();
+	}
+	
+	/*
+		Threats of both players on all squares.
+	*/
+	@Benchmark public int threatens()
+	{
+		var threats = 0;
+		for (var x = 0; x <= 7; x++)
+		{
+			for (var y = 0; y <= 7; y++)
+			{
+				if (board.threatens(true, x, y))
+				{
+					threats++;
+				}
+				if (board.threatens(false, x, y))
+				{
+					threats++;
+				}
+			}
+		}
+		return threats;
+	}
+	
+	@Benchmark public Board.GameStatus status()
+	{
+		return board.status();
+	}
+	
+	/*
+		Repetition analysis of each position reached by a legal move; the position caches of a
+		newly reached position are not computed yet. Includes the costs of 'execute_undo'.
+	*/
+	@Benchmark public int draw_repetition_status()
+	{
+		var repetitions = 0;
+		for (final var move : legal_moves)
+		{
+			if (board.execute(move))
+			{
+				repetitions += board.draw_repetition_status();
+				board.undo();
+			}
+		}
+		return repetitions;
+	}
+}
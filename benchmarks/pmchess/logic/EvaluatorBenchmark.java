@@ -0,0 +1,68 @@
+/*
+	This program and the accompanying materials are made available under the terms of the MIT
+	license (X11 license) which accompanies this distribution.
+	
+	Author: Christoff Bürger
+*/
+
+package pmchess.logic;
+
+import java.util.concurrent.*;
+
+import org.openjdk.jmh.annotations.*;
+
+/*
+	Benchmarks of the handcrafted evaluator scoring each position reached by a legal move of a fixed position
+	(average time per fixed position). The evaluator uses an evaluation cache of a single entry,
+	such that all positions are scored from scratch (its pawn hash table is still used, like in
+	searches).
+*/
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EvaluatorBenchmark
+{
+	@Param({"start", "middlegame", "kiwipete", "endgame"})
+	public String position;
+	
+	private Board board;
+	private int[] legal_moves;
+	private Evaluator evaluator;
+	
+	@Setup public void setup()
+	{
+		board = BenchmarkPositions.board(position);
+		legal_moves = board.legal_moves();
+		evaluator = new HandcraftedEvaluator(false, 0, new EvaluationCache(0));
+	}
+	
+	@Benchmark public int score()
+	{
+		var score = 0;
+		for (final var move : legal_moves)
+		{
+			board.execute(move);
+			score += evaluator.score(board, board.player());
+			board.undo();
+		}
+		return score;
+	}
+	
+	/*
+		Scores for a narrow window, such that lazy evaluations can skip expensive criteria.
+	*/
+	@Benchmark public int score_window()
+	{
+		var score = 0;
+		for (final var move : legal_moves)
+		{
+			board.execute(move);
+			score += evaluator.score(board, board.player(), -50, 50);
+			board.undo();
+		}
+		return score;
+	}
+}
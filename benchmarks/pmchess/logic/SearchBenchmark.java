@@ -0,0 +1,48 @@
+/*
+	This program and the accompanying materials are made available under the terms of the MIT
+	license (X11 license) which accompanies this distribution.
+	
+	Author: Christoff Bürger
+*/
+
+package pmchess.logic;
+
+import java.util.concurrent.*;
+
+import org.openjdk.jmh.annotations.*;
+
+/*
+	Benchmark of move selection at a fixed search depth. 'Search.select_move' adjusts its depth
+	to previous search durations; the benchmark therefore runs its search, a 'SearchStack', with
+	a fixed depth instead. Each search uses a new evaluator, such that evaluation caches do not
+	carry over from previous searches.
+*/
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SearchBenchmark
+{
+	@Param({"start", "middlegame", "kiwipete", "endgame"})
+	public String position;
+	
+	@Param({"3", "4"})
+	public int depth;
+	
+	private Board board;
+	
+	@Setup public void setup()
+	{
+		board = BenchmarkPositions.board(position);
+	}
+	
+	@Benchmark public int select_move()
+	{
+		final var search_stack =
+			new SearchStack(board.fork(), new HandcraftedEvaluator(false, 0), null, depth);
+		search_stack.search(Long.MAX_VALUE);
+		return search_stack.best_move();
+	}
+}
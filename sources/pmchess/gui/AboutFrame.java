@@ -176,7 +176,7 @@ public final class AboutFrame extends JFrame
 		
 		// Licenses:
 		final var licenses_text_area =
-			new JTextArea(pmchess.pmChess.licenses[0]);
+			new JTextArea(pmchess.pmChess.licenses()[0]);
 		licenses_text_area.setFont(Resources.font_italic);
 		licenses_text_area.setLineWrap(false);
 		licenses_text_area.setEditable(false);
@@ -207,7 +207,7 @@ public final class AboutFrame extends JFrame
 				@Override public void actionPerformed(final ActionEvent event)
 				{
 					licenses_text_area.setText(
-						pmchess.pmChess.licenses[licenses_combo_box.getSelectedIndex()]);
+						pmchess.pmChess.licenses()[licenses_combo_box.getSelectedIndex()]);
 				}
 			});
 		
@@ -9,6 +9,7 @@ package pmchess.gui;
 
 import java.io.*;
 
+import java.nio.charset.*;
 import java.nio.file.*;
 
 import java.awt.*;
@@ -17,6 +18,7 @@ import java.awt.desktop.*;
 
 import javax.swing.*;
 import javax.swing.event.*;
+import javax.swing.filechooser.*;
 
 public final class GUI extends JFrame
 {	
@@ -109,6 +111,8 @@ public final class GUI extends JFrame
 		game_menu.add(black_computer);
 		game_menu.add(no_computer);
 		game_menu.addSeparator();
+		game_menu.add(new ExportGameAction());
+		game_menu.addSeparator();
 		game_menu.add(new ExitAction());
 		menu_bar.add(game_menu);
 		final var help_menu =
@@ -244,39 +248,79 @@ public final class GUI extends JFrame
 			, WindowEvent.WINDOW_CLOSING)); // EXIT_ON_CLOSE => clean System.exit(0);
 	}
 	
-	public boolean save_game(final String game_file)
+	/*
+		Continue the game of the given journal and journal all further moves to it (cf.
+		'GameJournal'). Starts a new game if the journal cannot be read. A game adjourned by
+		pmChess versions before journals (the given adjourned game file) is migrated to the
+		journal first; the user is told if it cannot be migrated.
+	*/
+	public void load_game(final String journal_file, final String adjourned_game_file)
 	{
-		try (final var os = new ObjectOutputStream(new FileOutputStream(game_file, false)))
+		try
 		{
-			main_panel.serialize_game(os);
-			return true;
+			GameJournal.migrate(Paths.get(adjourned_game_file), Paths.get(journal_file));
 		}
-		catch (final Exception e1)
+		catch (final Exception e)
 		{
-			try
-			{
-				Files.deleteIfExists(Paths.get(game_file));
-			}
-			catch (final Exception e2)
+			JOptionPane.showMessageDialog(
+				  this
+				, "The adjourned game " + adjourned_game_file
+					+ " of a previous pmChess version could not be continued."
+				, "Error: Adjourned game not continued"
+				, JOptionPane.ERROR_MESSAGE);
+		}
+		try
+		{
+			main_panel.continue_game(GameJournal.open(Paths.get(journal_file)));
+		}
+		catch (final Exception e)
+		{
+			main_panel.initialize(false, false, new MainPanel.InitializationStep[]{});
+		}
+	}
+	
+	/*
+		Write all moves still to journal to the game journal (cf. 'load_game').
+	*/
+	public void save_game()
+	{
+		main_panel.close_journal();
+	}
+	
+	/*
+		Load the given opening book (cf. 'OpeningBook') for the computer player, if it exists.
+		Invalid books are ignored.
+	*/
+	public void load_opening_book(final String book_file)
+	{
+		try
+		{
+			if (Files.exists(Paths.get(book_file)))
 			{
+				main_panel.set_opening_book(pmchess.logic.OpeningBook.open(Paths.get(book_file)));
 			}
-			return false;
+		}
+		catch (final Exception e)
+		{
 		}
 	}
 	
-	public void load_game(final String game_file)
+	/*
+		Load the endgame tablebases of the given directory (cf. 'Tablebase') for the computer
+		player, if it exists. Invalid tablebases are ignored.
+	*/
+	public void load_tablebase(final String tablebase_directory)
 	{
 		try
 		{
-			if (Files.exists(Paths.get(game_file)))
-			try (final var is = new ObjectInputStream(new FileInputStream(game_file)))
+			if (Files.isDirectory(Paths.get(tablebase_directory)))
 			{
-				main_panel.deserialize_game(is);
+				main_panel.set_tablebase(
+					pmchess.logic.Tablebase.open(Paths.get(tablebase_directory)));
 			}
 		}
 		catch (final Exception e)
 		{
-			main_panel.initialize(false, false, new MainPanel.InitializationStep[]{});
 		}
 	}
 	
@@ -306,6 +350,41 @@ public final class GUI extends JFrame
 		}
 	}
 	
+	private final class ExportGameAction extends AbstractAction
+	{
+		private ExportGameAction()
+		{
+			super("Export game (PGN)...");
+		}
+		
+		@Override public void actionPerformed(final ActionEvent event)
+		{
+			final var file_chooser =
+				new JFileChooser();
+			file_chooser.setFileFilter(
+				new FileNameExtensionFilter("Portable Game Notation (*.pgn)", "pgn"));
+			file_chooser.setSelectedFile(new File("pmChess-game.pgn"));
+			if (file_chooser.showSaveDialog(GUI.this) != JFileChooser.APPROVE_OPTION)
+			{
+				return;
+			}
+			final var file =
+				file_chooser.getSelectedFile().toPath();
+			try (final var writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8))
+			{
+				main_panel.export_game(writer);
+			}
+			catch (final IOException exception)
+			{
+				JOptionPane.showMessageDialog(
+					  GUI.this
+					, "The game could not be exported to " + file + "."
+					, "Error: Game export failed"
+					, JOptionPane.ERROR_MESSAGE);
+			}
+		}
+	}
+	
 	private final class ExitAction extends AbstractAction
 	{
 		private ExitAction()
@@ -0,0 +1,421 @@
+/*
+	This program and the accompanying materials are made available under the terms of the MIT
+	license (X11 license) which accompanies this distribution.
+	
+	Author: Christoff Bürger
+*/
+
+package pmchess.gui;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+import java.io.*;
+
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.file.*;
+
+/*
+	Append-only journal of the game of 'MainPanel', such that the game can be continued when
+	pmChess is started again, even if it was not terminated normally.
+	
+	The journal is a file starting with a header (the magic number 'pmChessJ' and the version of
+	the format, long and int), followed by 8-byte records of the form move (int), turn (unsigned
+	short), search depth (unsigned byte) and kind (byte). Kinds are
+		(1) new games, with the computer players encoded in the move (bit 0 for white, bit 1 for
+		    black),
+		(2) moves, which replace the moves of their and all later turns and
+		(3) truncations, which remove the moves of their and all later turns.
+	The game of a journal is recovered by replaying its records; records following a torn or
+	invalid record are ignored.
+	
+	Records are written by a background thread in batches, each synchronized to the storage
+	device. New games start a new journal, which atomically replaces the old one (and whose
+	directory is synchronized as well, where supported, such that the replacement is durable).
+	
+	Games adjourned by pmChess versions before journals (serialized arrays of the computer
+	players and the moves and search depths of all turns) are migrated once (cf. 'migrate').
+*/
+public final class GameJournal
+{
+	private static final long magic = 0x706D43686573734Al; // 'pmChessJ'
+	private static final int version = 1;
+	private static final int header_size = 12;
+	private static final int record_size = 8;
+	
+	private static final byte kind_game = 1;
+	private static final byte kind_move = 2;
+	private static final byte kind_truncation = 3;
+	
+	private static final long[] close_request = new long[0];
+	
+	/* Recovered game: */
+	protected final boolean computer_w;
+	protected final boolean computer_b;
+	protected final int[] moves;
+	protected final int[] search_depths;
+	
+	private final Path file;
+	private FileChannel channel; // Only accessed by the writer.
+	private final BlockingQueue<long[]> queue =
+		new LinkedBlockingQueue<>();
+	private final Thread writer =
+		new Thread(this::write, "pmChess game journal");
+	
+	private GameJournal(
+		  final Path file
+		, final FileChannel channel
+		, final boolean computer_w
+		, final boolean computer_b
+		, final int[] moves
+		, final int[] search_depths)
+	{
+		this.file = file;
+		this.channel = channel;
+		this.computer_w = computer_w;
+		this.computer_b = computer_b;
+		this.moves = moves;
+		this.search_depths = search_depths;
+		writer.setDaemon(true);
+		writer.start();
+	}
+	
+	/*
+		Open the given journal and recover its game. The journal is created by the first new game
+		(cf. 'game') if it does not exist; games of invalid journals are discarded the same way.
+		Throws an 'IOException' if the journal cannot be read.
+	*/
+	protected static GameJournal open(final Path file) throws IOException
+	{
+		var computer_w = false;
+		var computer_b = false;
+		var moves = new int[64];
+		var search_depths = new int[64];
+		var count = 0;
+		if (!Files.exists(file))
+		{
+			return new GameJournal(file, null, false, false, new int[0], new int[0]);
+		}
+		final var channel =
+			FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+		try
+		{
+			final var size =
+				channel.size();
+			final var header =
+				ByteBuffer.allocate(header_size);
+			while (header.hasRemaining() && channel.read(header) != -1)
+			{
+			}
+			if (header.hasRemaining()
+				|| size > Integer.MAX_VALUE
+				|| header.getLong(0) != magic
+				|| header.getInt(8) != version)
+			{
+				channel.close();
+				return new GameJournal(file, null, false, false, new int[0], new int[0]);
+			}
+			final var records =
+				ByteBuffer.allocate((int) (size - header_size) / record_size * record_size);
+			while (records.hasRemaining() && channel.read(records) != -1)
+			{
+			}
+			records.flip();
+			while (records.hasRemaining())
+			{
+				final var move =
+					records.getInt();
+				final var turn =
+					Short.toUnsignedInt(records.getShort());
+				final var search_depth =
+					Byte.toUnsignedInt(records.get());
+				final var kind =
+					records.get();
+				if (kind == kind_game)
+				{
+					computer_w = (move & 1) != 0;
+					computer_b = (move & 2) != 0;
+					count = 0;
+				}
+				else if (kind == kind_move && turn > 0 && turn <= count + 1)
+				{
+					count = turn - 1;
+					if (count == moves.length)
+					{
+						moves = Arrays.copyOf(moves, 2 * count);
+						search_depths = Arrays.copyOf(search_depths, 2 * count);
+					}
+					moves[count] = move;
+					search_depths[count] = search_depth;
+					count++;
+				}
+				else if (kind == kind_truncation && turn > 0)
+				{
+					count = Math.min(count, turn - 1);
+				}
+				else // Torn or invalid record:
+				{
+					records.position(records.position() - record_size);
+					break;
+				}
+			}
+			// Append further records right after the last valid one:
+			channel.truncate(header_size + records.position());
+			channel.position(header_size + records.position());
+		}
+		catch (final IOException e)
+		{
+			channel.close();
+			throw e;
+		}
+		return new GameJournal(
+			  file
+			, channel
+			, computer_w
+			, computer_b
+			, Arrays.copyOf(moves, count)
+			, Arrays.copyOf(search_depths, count));
+	}
+	
+	/*
+		Migrate the given game adjourned by pmChess versions before journals to the given
+		journal, unless the journal already exists, and delete it. Throws an 'IOException' if
+		the adjourned game is invalid or the journal cannot be written; the adjourned game then
+		is kept.
+	*/
+	protected static void migrate(final Path adjourned_game, final Path file) throws IOException
+	{
+		if (!Files.exists(adjourned_game))
+		{
+			return;
+		}
+		if (!Files.exists(file))
+		{
+			final int[] game;
+			try (final var input = new ObjectInputStream(Files.newInputStream(adjourned_game)))
+			{
+				game = (int[]) input.readObject();
+			}
+			catch (final ClassNotFoundException | ClassCastException e)
+			{
+				throw new IOException("ERROR: Invalid adjourned game " + adjourned_game + ".");
+			}
+			if (game.length < 2 || game.length % 2 != 0)
+			{
+				throw new IOException("ERROR: Invalid adjourned game " + adjourned_game + ".");
+			}
+			final var turns =
+				(game.length - 2) / 2;
+			final var buffer =
+				ByteBuffer.allocate(header_size + (1 + turns) * record_size);
+			buffer.putLong(magic);
+			buffer.putInt(version);
+			buffer.putLong(record(
+				  (game[0] != 0 ? 1 : 0) | (game[1] != 0 ? 2 : 0)
+				, 0
+				, 0
+				, kind_game));
+			for (var turn = 1; turn <= turns; turn++)
+			{
+				buffer.putLong(record(game[2 * turn], turn, game[2 * turn + 1], kind_move));
+			}
+			buffer.flip();
+			replace(file, buffer);
+		}
+		Files.delete(adjourned_game);
+	}
+	
+	/*
+		Start a new journal with a new game of the given computer players, continued with the given
+		moves and their search depths.
+	*/
+	protected void game(
+		  final boolean computer_w
+		, final boolean computer_b
+		, final int[] moves
+		, final int[] search_depths)
+	{
+		final var records =
+			new long[1 + moves.length];
+		records[0] = record((computer_w ? 1 : 0) | (computer_b ? 2 : 0), 0, 0, kind_game);
+		for (var i = 0; i < moves.length; i++)
+		{
+			records[i + 1] = record(moves[i], i + 1, search_depths[i], kind_move);
+		}
+		queue.add(records);
+	}
+	
+	/*
+		Journal the move of the given turn, replacing any moves of the same or later turns.
+	*/
+	protected void move(final int turn, final int move, final int search_depth)
+	{
+		queue.add(new long[]{record(move, turn, search_depth, kind_move)});
+	}
+	
+	/*
+		Journal the removal of the moves of the given and all later turns.
+	*/
+	protected void truncate(final int turn)
+	{
+		queue.add(new long[]{record(0, turn, 0, kind_truncation)});
+	}
+	
+	/*
+		Write all journaled records and stop journaling.
+	*/
+	protected void close()
+	{
+		queue.add(close_request);
+		try
+		{
+			writer.join();
+		}
+		catch (final InterruptedException e)
+		{
+		}
+	}
+	
+	private static long record(
+		  final int move
+		, final int turn
+		, final int search_depth
+		, final byte kind)
+	{
+		return ((long) move << 32)
+			| ((long) (turn & 0xFFFF) << 16)
+			| (Math.min(search_depth, 0xFF) << 8)
+			| kind;
+	}
+	
+	private void write()
+	{
+		final var batch =
+			new ArrayList<long[]>();
+		var closed = false;
+		try
+		{
+			while (!closed)
+			{
+				batch.clear();
+				batch.add(queue.take());
+				queue.drainTo(batch);
+				
+				// Records to write, starting with the last new game of the batch if any:
+				var first = 0;
+				var count = 0;
+				for (var i = 0; i < batch.size(); i++)
+				{
+					final var records =
+						batch.get(i);
+					if (records == close_request)
+					{
+						closed = true;
+					}
+					else if ((records[0] & 0xFF) == kind_game)
+					{
+						first = i;
+						count = 0;
+					}
+					count += records.length;
+				}
+				if (count == 0)
+				{ // Just closed; do not start a journal without any records:
+					continue;
+				}
+				final var restart =
+					channel == null || (batch.get(first).length > 0
+						&& (batch.get(first)[0] & 0xFF) == kind_game);
+				final var buffer =
+					ByteBuffer.allocate((restart ? header_size : 0) + count * record_size);
+				if (restart)
+				{
+					buffer.putLong(magic);
+					buffer.putInt(version);
+				}
+				for (var i = first; i < batch.size(); i++)
+				{
+					for (final var record : batch.get(i))
+					{
+						buffer.putLong(record);
+					}
+				}
+				buffer.flip();
+				
+				if (restart)
+				{ // Replace the journal atomically by a new one:
+					if (channel != null)
+					{
+						channel.close();
+						channel = null;
+					}
+					replace(file, buffer);
+					channel = FileChannel.open(file, StandardOpenOption.WRITE);
+					channel.position(channel.size());
+				}
+				else
+				{
+					while (buffer.hasRemaining())
+					{
+						channel.write(buffer);
+					}
+					channel.force(false);
+				}
+			}
+		}
+		catch (final IOException | InterruptedException e)
+		{ // Stop journaling; the journal keeps the game up to the last written batch.
+		}
+		finally
+		{
+			if (channel != null)
+			{
+				try
+				{
+					channel.close();
+				}
+				catch (final IOException e)
+				{
+				}
+			}
+		}
+	}
+	
+	/*
+		Atomically and durably replace the given file by a new one with the remaining bytes of the
+		given buffer.
+	*/
+	private static void replace(final Path file, final ByteBuffer buffer) throws IOException
+	{
+		final var new_file =
+			file.resolveSibling(file.getFileName() + ".new");
+		try (final var new_channel = FileChannel.open(
+			  new_file
+			, StandardOpenOption.WRITE
+			, StandardOpenOption.CREATE
+			, StandardOpenOption.TRUNCATE_EXISTING))
+		{
+			while (buffer.hasRemaining())
+			{
+				new_channel.write(buffer);
+			}
+			new_channel.force(true);
+		}
+		Files.move(
+			  new_file
+			, file
+			, StandardCopyOption.ATOMIC_MOVE
+			, StandardCopyOption.REPLACE_EXISTING);
+		
+		// Synchronize the directory, such that the rename survives crashes:
+		try (final var directory = FileChannel.open(
+			file.toAbsolutePath().getParent(), StandardOpenOption.READ))
+		{
+			directory.force(true);
+		}
+		catch (final IOException e)
+		{ // Directories cannot be opened or synchronized on some platforms (e.g., Windows).
+		}
+	}
+}
@@ -7,10 +7,14 @@
 
 package pmchess.gui;
 
+import java.util.*;
 import java.util.concurrent.locks.ReentrantLock;
 
 import java.io.*;
 
+import java.time.*;
+import java.time.format.*;
+
 import java.awt.*;
 import java.awt.event.*;
 import java.awt.font.FontRenderContext;
@@ -32,6 +36,9 @@ public final class MainPanel extends JPanel
 	private static final Image bulb =
 		Resources.load_image("icons/bulb.png");
 	
+	private static final SearchScheduler search_scheduler =
+		new SearchScheduler(); // Shared by all searches, e.g., computer moves.
+	
 	/*
 		All variables except 'board', 'computer_w' and 'computer_b' are read and written by THE
 		thread creating the GUI only => locking only required for these three:
@@ -44,7 +51,7 @@ public final class MainPanel extends JPanel
 	private final Search search =
 		new Search();
 	private final Evaluator evaluator =
-		new Evaluator();
+		new HandcraftedEvaluator();
 	
 	private boolean computer_w = false; // Any access must be locked.
 	private boolean computer_b = false; // Any access must be locked.
@@ -60,6 +67,8 @@ public final class MainPanel extends JPanel
 	
 	private int invalid_internal_move = 0;
 	
+	private GameJournal journal = null; // Games are only journaled if set.
+	
 	private final BoardPanel board_panel =
 		new BoardPanel();
 	private final GamePanel game_panel =
@@ -122,50 +131,100 @@ public final class MainPanel extends JPanel
 		Resources.configure_rendering(graphics);
 	}
 	
-	protected void serialize_game(final ObjectOutputStream os)
-		throws IOException
+	/*
+		Continue the game recovered from the given journal and journal the game to it from now
+		on (cf. 'GameJournal').
+	*/
+	protected void continue_game(final GameJournal journal)
 	{
-		board_lock.lock();
-		try
+		final InitializationStep[] initialization_steps =
+			new InitializationStep[journal.moves.length];
+		for (var i = 0; i < initialization_steps.length; i++)
 		{
-			final var turns_to_serialize =
-				(is_in_search > 0
-					? is_in_search
-					: board.turn())
-				- 1;
-			final var game = new int[2 + 2 * turns_to_serialize];
-			game[0] = computer_w ? 1 : 0;
-			game[1] = computer_b ? 1 : 0;
-			for (var t = turns_to_serialize; t > 0; t--)
-			{
-				game[2 * t] = board.previous_move(t);
-				game[2 * t + 1] = history_panel.history_data.get(t).search_depth;
-			}
-			os.writeObject(game);
+			initialization_steps[i] =
+				new InitializationStep(journal.moves[i], journal.search_depths[i]);
 		}
-		finally
+		this.journal = journal;
+		initialize(
+			  journal.computer_w
+			, journal.computer_b
+			, initialization_steps);
+	}
+	
+	/*
+		Write all moves still to journal and stop journaling.
+	*/
+	protected void close_journal()
+	{
+		if (journal != null)
 		{
-			board_lock.unlock();
+			journal.close();
 		}
 	}
 	
-	protected void deserialize_game(final ObjectInputStream is)
-		throws IOException, ClassNotFoundException
+	/*
+		Set the opening book of the computer player (cf. 'Search.set_opening_book').
+	*/
+	protected void set_opening_book(final OpeningBook opening_book)
+	{
+		search.set_opening_book(opening_book);
+	}
+	
+	/*
+		Set the endgame tablebase of the computer player (cf. 'Search.set_tablebase').
+	*/
+	protected void set_tablebase(final Tablebase tablebase)
+	{
+		search.set_tablebase(tablebase);
+	}
+	
+	/*
+		Write the game of the history, from its beginning to its last move, in Portable Game
+		Notation (cf. 'PGN').
+	*/
+	protected void export_game(final Writer writer)
+		throws IOException
 	{
 		final var game =
-			(int[])(is.readObject());
-		final var turns_to_serialize =
-			(game.length - 2) / 2;
-		final InitializationStep[] initialization_steps =
-			new InitializationStep[turns_to_serialize];
-		for (int i = 0, j = 2; i < turns_to_serialize; i++)
+			new Board();
+		for (var t = 1; t < history_panel.history_data.size(); t++)
 		{
-			initialization_steps[i] = new InitializationStep(game[j++], game[j++]);
+			final var move =
+				history_panel.history_data.get(t).move;
+			if (!(Move.is_moveless_draw_claim(move)
+				? game.execute_moveless_draw_claim()
+				: game.execute(
+					  Move.x(move)
+					, Move.y(move)
+					, Move.X(move)
+					, Move.Y(move)
+					, Move.figure_placed(move)
+					, Move.draw_claim(move))))
+			{
+				throw new IOException("ERROR: Invalid move " + move + " in game history.");
+			}
 		}
-		initialize(
-			  game[0] != 0
-			, game[1] != 0
-			, initialization_steps);
+		final var tags =
+			new LinkedHashMap<String, String>();
+		tags.put("Event", "pmChess game");
+		tags.put("Date", LocalDate.now().format(DateTimeFormatter.ofPattern("yyyy.MM.dd")));
+		board_lock.lock();
+		try
+		{
+			final var computer =
+				"pmChess " + pmchess.pmChess.version;
+			tags.put("White", computer_w ? computer : "Human");
+			tags.put("Black", computer_b ? computer : "Human");
+		}
+		finally
+		{
+			board_lock.unlock();
+		}
+		if (computer_resigned)
+		{ // The computer of the player of the last position resigned:
+			tags.put("Result", game.player() ? "0-1" : "1-0");
+		}
+		PGN.write(writer, game, tags);
 	}
 	
 	protected final class InitializationStep
@@ -205,34 +264,49 @@ public final class MainPanel extends JPanel
 			this.computer_w = computer_w;
 			this.computer_b = computer_b;
 			invalid_internal_move = 0;
+			// Replay steps, computing the status of each position only once:
+			final var past_moves =
+				new ArrayList<PastMove>(initialization_steps.length);
+			var status =
+				board.status();
+			var repetition_status =
+				board.draw_repetition_status();
 			for (final var step : initialization_steps)
 			{
-				final var last_status =
-					board.draw_repetition_status();
-				if (!(Move.is_moveless_draw_claim(step.move)
-					? board.execute_moveless_draw_claim()
-					: board.execute(
-						  Move.x(step.move)
-						, Move.y(step.move)
-						, Move.X(step.move)
-						, Move.Y(step.move)
-						, Move.figure_placed(step.move)
-						, Move.draw_claim(step.move))))
+				if (!board.execute(step.move, status))
 				{
 					invalid_internal_move = step.move;
 					this.computer_w = false;
 					this.computer_b = false;
 					break;
 				}
-				history_panel.history_data.addElement(new PastMove(
+				status = board.status();
+				final var last_repetition_status =
+					repetition_status;
+				repetition_status = board.draw_repetition_status();
+				past_moves.add(new PastMove(
 					  board.turn() - 1
 					, step.move
-					, board.status()
-					, board.draw_repetition_status() > last_status
+					, status
+					, repetition_status > last_repetition_status
 					, step.search_depth));
 			}
+			history_panel.history_data.addAll(past_moves);
 			search.set_search_depth(
 				history_panel.history_data.lastElement().search_depth);
+			if (journal != null)
+			{
+				final var moves =
+					new int[board.turn() - 1];
+				final var search_depths =
+					new int[board.turn() - 1];
+				for (var t = 1; t < board.turn(); t++)
+				{
+					moves[t - 1] = history_panel.history_data.get(t).move;
+					search_depths[t - 1] = history_panel.history_data.get(t).search_depth;
+				}
+				journal.game(this.computer_w, this.computer_b, moves, search_depths);
+			}
 			
 			run_game(); // 'run_game()' takes care of repainting.
 		}
@@ -242,6 +316,18 @@ public final class MainPanel extends JPanel
 		}
 	}
 	
+	/*
+		Add the given move, of the last turn, to the history and journal it.
+	*/
+	private void add_to_history(final PastMove past_move)
+	{
+		history_panel.history_data.addElement(past_move);
+		if (journal != null)
+		{
+			journal.move(past_move.turn, past_move.move, past_move.search_depth);
+		}
+	}
+	
 	private void run_game()
 	{
 		board_lock.lock();
@@ -271,70 +357,66 @@ public final class MainPanel extends JPanel
 			history_panel.history_redo_button.setEnabled(false);
 			requestFocusInWindow();
 			
-			// Execute computer move in asynchronous co-routine:
+			// Execute computer move asynchronously:
 			if (computer_continues && is_in_search == 0)
 			{
 				is_in_search = board.turn();
 				final var forked_board =
 					board.fork();
-				final var search_coroutine =
-					new Thread()
+				search_scheduler.submit(search.select_move_task(
+					  forked_board
+					, evaluator
+					, (final int move) ->
 					{
-						@Override public void run()
-						{
-							final var move =
-								search.select_move(forked_board, evaluator);
-							java.awt.EventQueue.invokeLater(
-								new Runnable()
+						java.awt.EventQueue.invokeLater(
+							new Runnable()
+							{
+								@Override public void run()
 								{
-									@Override public void run()
+									board_lock.lock();
+									try
 									{
-										board_lock.lock();
-										try
+										computer_resigned = move == 0;
+										if (computer_resigned)
 										{
-											computer_resigned = move == 0;
-											if (computer_resigned)
-											{
-												return;
-											}
-											final var last_status =
-												board.draw_repetition_status();
-											if (!(Move.is_moveless_draw_claim(move)
-												? board.execute_moveless_draw_claim()
-												: board.execute(
-													  Move.x(move)
-													, Move.y(move)
-													, Move.X(move)
-													, Move.Y(move)
-													, Move.figure_placed(move)
-													, Move.draw_claim(move))))
-											{
-												invalid_internal_move = move;
-												computer_w = false;
-												computer_b = false;
-												return;
-											}
-											history_panel.history_data.addElement(new PastMove(
-												  board.turn() - 1
-												, move
-												, board.status()
-												, board.draw_repetition_status() > last_status
-												, search.get_search_depth()));
-											// Reset all GUI selections influenced by computer move:
-											history_panel.history_list.setSelectedIndex(
-												board.turn() - 1);
+											return;
 										}
-										finally
+										final var last_status =
+											board.draw_repetition_status();
+										if (!(Move.is_moveless_draw_claim(move)
+											? board.execute_moveless_draw_claim()
+											: board.execute(
+												  Move.x(move)
+												, Move.y(move)
+												, Move.X(move)
+												, Move.Y(move)
+												, Move.figure_placed(move)
+												, Move.draw_claim(move))))
 										{
-											is_in_search = 0;
-											board_lock.unlock();
-											run_game();
+											invalid_internal_move = move;
+											computer_w = false;
+											computer_b = false;
+											return;
 										}
+										add_to_history(new PastMove(
+											  board.turn() - 1
+											, move
+											, board.status()
+											, board.draw_repetition_status() > last_status
+											, search.get_search_depth()));
+										// Reset all GUI selections influenced by computer move:
+										history_panel.history_list.setSelectedIndex(
+											board.turn() - 1);
 									}
-								});
-						}
-					};
-				search_coroutine.start();
+									finally
+									{
+										is_in_search = 0;
+										board_lock.unlock();
+										run_game();
+									}
+								}
+							});
+					}));
 			}
 			
 			// Update GUI:
@@ -392,7 +474,7 @@ public final class MainPanel extends JPanel
 							, figure_placed
 							, game_panel.status_panel.draw_claim_button.isSelected()))
 						{
-							history_panel.history_data.addElement(new PastMove(
+							add_to_history(new PastMove(
 								  board.turn() - 1
 								, board.previous_move(board.turn() - 1)
 								, board.status()
@@ -625,6 +707,10 @@ public final class MainPanel extends JPanel
 		
 		@Override public void paintComponent(final Graphics graphic)
 		{
+			final var event =
+				new RepaintEvent("Chessboard");
+			event.begin();
+			
 			super.paintComponent(graphic);
 			Resources.configure_rendering(graphic);
 			
@@ -674,6 +760,8 @@ public final class MainPanel extends JPanel
 			
 			// Draw tiles:
 			draw_tiles(graphic);
+			
+			event.commit();
 		}
 		
 		private void draw_tiles(final Graphics graphic)
@@ -968,7 +1056,7 @@ public final class MainPanel extends JPanel
 									}
 									if (board.execute_moveless_draw_claim())
 									{
-										history_panel.history_data.addElement(new PastMove(
+										add_to_history(new PastMove(
 											  board.turn() - 1
 											, board.previous_move(board.turn() - 1)
 											, board.status()
@@ -1199,7 +1287,7 @@ public final class MainPanel extends JPanel
 				draw_panel.add(Box.createHorizontalGlue());
 				draw_panel.add(draw_move_rules_status);
 				draw_panel.add(Box.createHorizontalGlue());
-
+				
 				// Compose everything (status message, allowed castlings information,
 				// pawn promotion selection and draw status):
 				
@@ -1268,6 +1356,10 @@ public final class MainPanel extends JPanel
 			
 			@Override public void paintComponent(final Graphics graphic)
 			{
+				final var event =
+					new RepaintEvent("Game status");
+				event.begin();
+				
 				board_lock.lock();
 				try
 				{
@@ -1352,6 +1444,8 @@ public final class MainPanel extends JPanel
 				{
 					board_lock.unlock();
 				}
+				
+				event.commit();
 			}
 		}
 		
@@ -1590,6 +1684,10 @@ public final class MainPanel extends JPanel
 								history_panel.history_data.removeRange(
 									  board.turn()
 									, history_panel.history_data.size() - 1);
+								if (journal != null)
+								{
+									journal.truncate(board.turn());
+								}
 							}
 							run_game(); // 'run_game()' takes care of repainting.
 						}
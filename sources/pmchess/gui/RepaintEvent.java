@@ -0,0 +1,31 @@
+/*
+	This program and the accompanying materials are made available under the terms of the MIT
+	license (X11 license) which accompanies this distribution.
+	
+	Author: Christoff Bürger
+*/
+
+package pmchess.gui;
+
+import jdk.jfr.*;
+
+/*
+	Java Flight Recorder event of a repaint pass of a panel of 'MainPanel', including waiting for
+	the board lock; disabled by default (cf. 'pmchess.logic.SearchEvent').
+*/
+@Name("pmchess.Repaint")
+@Label("Repaint")
+@Category({"pmChess", "Graphical User Interface"})
+@Description("Repaint pass of a panel of the main window.")
+@Enabled(false)
+@StackTrace(false)
+public final class RepaintEvent extends Event
+{
+	@Label("Panel")
+	protected String panel;
+	
+	protected RepaintEvent(final String panel)
+	{
+		this.panel = panel;
+	}
+}
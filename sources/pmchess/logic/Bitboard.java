@@ -0,0 +1,162 @@
+/*
+	This program and the accompanying materials are made available under the terms of the MIT
+	license (X11 license) which accompanies this distribution.
+	
+	Author: Christoff Bürger
+*/
+
+package pmchess.logic;
+
+/*
+	Attack computations on bitboards, i.e., 'long' values whose bit 'x + 8 * y' represents the
+	square at 'x' and 'y' (cf. 'Board.squares'). Sliding figures are computed by rays: the
+	squares of a ray in a direction are cut behind the first occupied square of the ray.
+*/
+public final class Bitboard
+{
+	private Bitboard()
+	{
+		// No instances.
+	}
+	
+	private static final long[] knight_attacks =
+		new long[64];
+	private static final long[] king_attacks =
+		new long[64];
+	private static final long[][] pawn_attacks =
+		new long[2][64]; // Indexed by player (0: white, 1: black) and square.
+	
+	/*
+		Rays indexed by direction and square; the first four directions increase square indices,
+		the last four decrease them:
+	*/
+	private static final int[][] directions =
+		{
+			  { 0,  1} // north
+			, { 1,  0} // east
+			, { 1,  1} // north-east
+			, {-1,  1} // north-west
+			, { 0, -1} // south
+			, {-1,  0} // west
+			, {-1, -1} // south-west
+			, { 1, -1} // south-east
+		};
+	private static final long[][] rays =
+		new long[8][64];
+	
+	static
+	{
+		final int[][] knight_jumps =
+			{{1, 2}, {2, 1}, {2, -1}, {1, -2}, {-1, -2}, {-2, -1}, {-2, 1}, {-1, 2}};
+		for (var x = 0; x <= 7; x++)
+		{
+			for (var y = 0; y <= 7; y++)
+			{
+				final var square =
+					x + 8 * y;
+				for (final var jump : knight_jumps)
+				{
+					final var X =
+						x + jump[0];
+					final var Y =
+						y + jump[1];
+					if (X >= 0 && X <= 7 && Y >= 0 && Y <= 7)
+					{
+						knight_attacks[square] |= 1l << (X + 8 * Y);
+					}
+				}
+				for (var d = 0; d < 8; d++)
+				{
+					final var X =
+						x + directions[d][0];
+					final var Y =
+						y + directions[d][1];
+					if (X >= 0 && X <= 7 && Y >= 0 && Y <= 7)
+					{
+						king_attacks[square] |= 1l << (X + 8 * Y);
+					}
+				}
+				for (var X = x - 1; X <= x + 1; X += 2)
+				{
+					if (X >= 0 && X <= 7 && y <= 6)
+					{
+						pawn_attacks[0][square] |= 1l << (X + 8 * (y + 1));
+					}
+					if (X >= 0 && X <= 7 && y >= 1)
+					{
+						pawn_attacks[1][square] |= 1l << (X + 8 * (y - 1));
+					}
+				}
+				for (var d = 0; d < 8; d++)
+				{
+					for (int X = x + directions[d][0], Y = y + directions[d][1];
+						X >= 0 && X <= 7 && Y >= 0 && Y <= 7;
+						X += directions[d][0], Y += directions[d][1])
+					{
+						rays[d][square] |= 1l << (X + 8 * Y);
+					}
+				}
+			}
+		}
+	}
+	
+	public static long knight_attacks(final int square)
+	{
+		return knight_attacks[square];
+	}
+	
+	public static long king_attacks(final int square)
+	{
+		return king_attacks[square];
+	}
+	
+	/*
+		Squares attacked by a pawn of the given player at the given square.
+	*/
+	public static long pawn_attacks(final int square, final boolean player)
+	{
+		return pawn_attacks[player ? 0 : 1][square];
+	}
+	
+	public static long rook_attacks(final int square, final long occupied)
+	{
+		return ray_attacks(0, square, occupied)
+			| ray_attacks(1, square, occupied)
+			| ray_attacks(4, square, occupied)
+			| ray_attacks(5, square, occupied);
+	}
+	
+	public static long bishop_attacks(final int square, final long occupied)
+	{
+		return ray_attacks(2, square, occupied)
+			| ray_attacks(3, square, occupied)
+			| ray_attacks(6, square, occupied)
+			| ray_attacks(7, square, occupied);
+	}
+	
+	public static long queen_attacks(final int square, final long occupied)
+	{
+		return rook_attacks(square, occupied) | bishop_attacks(square, occupied);
+	}
+	
+	/*
+		Squares attacked in the given direction from the given square, up to and including the
+		first occupied square.
+	*/
+	private static long ray_attacks(final int direction, final int square, final long occupied)
+	{
+		final var ray =
+			rays[direction][square];
+		final var blockers =
+			ray & occupied;
+		if (blockers == 0)
+		{
+			return ray;
+		}
+		final var blocker =
+			direction < 4
+				? Long.numberOfTrailingZeros(blockers)
+				: 63 - Long.numberOfLeadingZeros(blockers);
+		return ray ^ rays[direction][blocker];
+	}
+}
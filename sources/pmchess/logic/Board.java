@@ -29,6 +29,49 @@ public final class Board
 		, ClaimedMoveRule
 	}
 	
+	/*
+		Random keys for Zobrist hashing of positions. The keys are generated from a fixed seed,
+		such that hashes are equal for every run of pmChess (e.g., can be stored in files).
+	*/
+	private static final long[] hash_keys_figures =
+		new long[13 * 64]; // Indexed by figure key and square (x + 8 * y).
+	private static final long[] hash_keys_castlings =
+		new long[16]; // Indexed by castlings allowed.
+	private static final long[] hash_keys_en_passant =
+		new long[8]; // Indexed by file of pawn that can be captured.
+	private static final long hash_key_black;
+	
+	static
+	{
+		var seed = 0x706D4368657373l; // "pmChess"
+		for (var i = 64 /* no figure (key 0) */; i < hash_keys_figures.length; i++)
+		{
+			hash_keys_figures[i] = hash_mix(seed += 0x9E3779B97F4A7C15l);
+		}
+		for (var i = 0; i < hash_keys_castlings.length; i++)
+		{
+			hash_keys_castlings[i] = hash_mix(seed += 0x9E3779B97F4A7C15l);
+		}
+		for (var i = 0; i < hash_keys_en_passant.length; i++)
+		{
+			hash_keys_en_passant[i] = hash_mix(seed += 0x9E3779B97F4A7C15l);
+		}
+		hash_key_black = hash_mix(seed += 0x9E3779B97F4A7C15l);
+	}
+	
+	/*
+		Bijective mixing of the bits of the given value (the finalizer of the SplitMix64 random
+		number generator); small changes of the value result in completely different mixes.
+	*/
+	protected static long hash_mix(final long value)
+	{
+		var result =
+			value;
+		result = (result ^ (result >>> 30)) * 0xBF58476D1CE4E5B9l;
+		result = (result ^ (result >>> 27)) * 0x94D049BB133111EBl;
+		return result ^ (result >>> 31);
+	}
+	
 	private final Figure[][] board =
 		{
 			  {
@@ -125,6 +168,30 @@ public final class Board
 	private boolean player = true;
 	private int turn = 1;
 	
+	/*
+		Number of turns played before the beginning of the game history and file of the pawn
+		that can be captured en passant in the first position of the game history (-1 if none);
+		both only differ from the initial position for boards of FEN positions (cf. 'fen'):
+	*/
+	private int turn_offset = 0;
+	private int en_passant_file_initial = -1;
+	
+	/*
+		Information about the current position that is updated incrementally whenever figures,
+		castlings or the active player change:
+	*/
+	private long hash = 0; // Zobrist hash without en passant captures (cf. 'hash()').
+	private long pawn_hash = 0; // Zobrist hash of just the pawns (cf. 'pawn_hash()').
+	private final long[] squares =
+		new long[13]; // Bitboards of the squares occupied by each figure (indexed by key).
+	private final int[] material =
+		{0, 0}; // White's and Black's material (cf. 'material').
+	private final int[] placement_middlegame =
+		{0, 0}; // White's and Black's placement (cf. 'placement_middlegame').
+	private final int[] placement_endgame =
+		{0, 0}; // White's and Black's placement (cf. 'placement_endgame').
+	private int phase = 0; // Sum of 'HandcraftedEvaluator.phase_table' of all figures.
+	
 	private static final class PositionCache
 	{
 		boolean is_cached = false;
@@ -175,9 +242,25 @@ public final class Board
 	private final int[] moves = new int[16384];
 	
 	/*
-		Initialization of 'moves' and 'position_caches':
+		Initialization of incrementally updated position information, 'moves' and
+		'position_caches':
 	*/
 	{
+		hash = hash_keys_castlings[castlings_allowed] ^ (player ? 0 : hash_key_black);
+		for (var x = 0; x <= 7; x++)
+		{
+			for (var y = 0; y <= 7; y++)
+			{
+				final var f =
+					board[x][y];
+				if (f != null)
+				{
+					board[x][y] = null;
+					figure_add(f, x, y);
+				}
+			}
+		}
+		
 		Arrays.fill(moves, 0);
 		moves[0] = 3;
 		moves[1] = -1;
@@ -247,15 +330,18 @@ public final class Board
 			}
 		}
 		
-		forked_board.moves[2] = moves[2];
-		for (var i = forked_board.moves[forked_board.moves_frame];
-			i < moves[moves_frame];
-			i++)
-		{
-			forked_board.moves[i] = moves[i];
-		}
+		// Copy the whole game history; the first move frame and position differ from the
+		//   initial position of a new board in case of boards of FEN positions (cf. 'fen'):
+		System.arraycopy(moves, 0, forked_board.moves, 0, moves[moves_frame]);
 		forked_board.moves[moves_frame + 2] = 0;
 		forked_board.moves_frame = moves_frame;
+		forked_board.position_caches[1].move_rules_counter = position_caches[1].move_rules_counter;
+		System.arraycopy(
+			  position_caches[1].board
+			, 0
+			, forked_board.position_caches[1].board
+			, 0
+			, position_caches[1].board.length);
 		
 		forked_board.king_x_w = king_x_w;
 		forked_board.king_y_w = king_y_w;
@@ -268,12 +354,317 @@ public final class Board
 		
 		forked_board.player = player;
 		forked_board.turn = turn;
+		forked_board.turn_offset = turn_offset;
+		forked_board.en_passant_file_initial = en_passant_file_initial;
+		
+		forked_board.hash = hash;
+		forked_board.pawn_hash = pawn_hash;
+		System.arraycopy(squares, 0, forked_board.squares, 0, squares.length);
+		System.arraycopy(material, 0, forked_board.material, 0, material.length);
+		System.arraycopy(
+			  placement_middlegame
+			, 0
+			, forked_board.placement_middlegame
+			, 0
+			, placement_middlegame.length);
+		System.arraycopy(
+			  placement_endgame
+			, 0
+			, forked_board.placement_endgame
+			, 0
+			, placement_endgame.length);
+		forked_board.phase = phase;
 		
 		return forked_board;
 	}
 	
-	private void moves_compute_possible()
+	/*
+		Letters of figures in Forsyth-Edwards Notation (FEN), indexed by figure key:
+	*/
+	private static final String fen_figures = " PRNBQKprnbqk";
+	
+	/*
+		Board with the position given in Forsyth-Edwards Notation (FEN), constructed directly
+		without replaying any game. The position is the beginning of the board's game history;
+		hence, 'turn' is 1 and the history cannot be undone. The en passant square, halfmove
+		clock (for the 50/75-move rules) and fullmove number of the position are considered; the
+		two clocks are optional. Throws an 'IllegalArgumentException' if the given position is
+		invalid.
+	*/
+	public static Board fen(final String fen)
 	{
+		final var fields =
+			fen.trim().split("\\s+");
+		final var ranks =
+			fields[0].split("/");
+		if (fields.length < 4 || fields.length > 6 || ranks.length != 8)
+		{
+			throw new IllegalArgumentException("ERROR: Invalid FEN " + fen + ".");
+		}
+		final var board =
+			new Board();
+		for (var x = 0; x <= 7; x++)
+		{
+			for (var y = 0; y <= 7; y++)
+			{
+				if (board.board[x][y] != null)
+				{
+					board.figure_remove(x, y);
+				}
+			}
+		}
+		
+		// Figure placement (from the 8th to the 1st rank):
+		var kings_w = 0;
+		var kings_b = 0;
+		for (var y = 7; y >= 0; y--)
+		{
+			var x = 0;
+			for (final var c : ranks[7 - y].toCharArray())
+			{
+				if (c >= '1' && c <= '8')
+				{
+					x += c - '0';
+					continue;
+				}
+				final var key =
+					fen_figures.indexOf(c);
+				if (key < 1 || x > 7)
+				{
+					throw new IllegalArgumentException("ERROR: Invalid FEN " + fen + ".");
+				}
+				final var figure =
+					Figure.figures[key];
+				if (figure.is_pawn() && (y == 0 || y == 7))
+				{ // Pawns never are on the first or last rank (they are promoted there):
+					throw new IllegalArgumentException("ERROR: Invalid FEN " + fen + ".");
+				}
+				board.figure_add(figure, x, y);
+				if (figure == Figure.king(true))
+				{
+					board.king_x_w = x;
+					board.king_y_w = y;
+					kings_w++;
+				}
+				else if (figure == Figure.king(false))
+				{
+					board.king_x_b = x;
+					board.king_y_b = y;
+					kings_b++;
+				}
+				x++;
+			}
+			if (x != 8)
+			{
+				throw new IllegalArgumentException("ERROR: Invalid FEN " + fen + ".");
+			}
+		}
+		if (kings_w != 1 || kings_b != 1)
+		{
+			throw new IllegalArgumentException("ERROR: Invalid FEN " + fen + ".");
+		}
+		
+		// Active player:
+		switch (fields[1])
+		{
+		case "w":
+			break;
+		case "b":
+			board.player = false;
+			board.hash ^= hash_key_black;
+			break;
+		default:
+			throw new IllegalArgumentException("ERROR: Invalid FEN " + fen + ".");
+		}
+		
+		// Castlings (just permitted if the king and rook are on their initial squares):
+		var castlings_allowed = 0;
+		if (!fields[2].equals("-"))
+		{
+			for (final var c : fields[2].toCharArray())
+			{
+				final var castling =
+					"QKqk".indexOf(c);
+				final var castling_player =
+					castling < 2;
+				final var y =
+					castling_player ? 0 : 7;
+				if (castling == -1
+					|| board.board[4][y] != Figure.king(castling_player)
+					|| board.board[castling % 2 == 0 ? 0 : 7][y] != Figure.rook(castling_player))
+				{
+					throw new IllegalArgumentException("ERROR: Invalid FEN " + fen + ".");
+				}
+				castlings_allowed |= 1 << castling;
+			}
+		}
+		board.hash ^= hash_keys_castlings[board.castlings_allowed];
+		board.castlings_allowed = castlings_allowed;
+		board.hash ^= hash_keys_castlings[board.castlings_allowed];
+		
+		// En passant square (just permitted behind a pawn of the opponent that can have moved
+		//   two squares):
+		if (!fields[3].equals("-"))
+		{
+			final var x =
+				fields[3].charAt(0) - 'a';
+			final var y =
+				board.player ? 5 : 2;
+			if (fields[3].length() != 2
+				|| x < 0 || x > 7
+				|| fields[3].charAt(1) - '1' != y
+				|| board.board[x][board.player ? 4 : 3] != Figure.pawn(!board.player)
+				|| board.board[x][y] != null
+				|| board.board[x][board.player ? 6 : 1] != null)
+			{
+				throw new IllegalArgumentException("ERROR: Invalid FEN " + fen + ".");
+			}
+			board.en_passant_file_initial = x;
+		}
+		
+		// Halfmove clock and fullmove number:
+		if (fields.length > 4)
+		{
+			try
+			{
+				board.position_caches[1].move_rules_counter = Integer.parseInt(fields[4]);
+			}
+			catch (NumberFormatException exception)
+			{
+				throw new IllegalArgumentException("ERROR: Invalid FEN " + fen + ".");
+			}
+			if (board.position_caches[1].move_rules_counter < 0)
+			{
+				throw new IllegalArgumentException("ERROR: Invalid FEN " + fen + ".");
+			}
+		}
+		if (fields.length > 5)
+		{
+			final int move;
+			try
+			{
+				move = Integer.parseInt(fields[5]);
+			}
+			catch (NumberFormatException exception)
+			{
+				throw new IllegalArgumentException("ERROR: Invalid FEN " + fen + ".");
+			}
+			if (move < 1 || move > 10000)
+			{
+				throw new IllegalArgumentException("ERROR: Invalid FEN " + fen + ".");
+			}
+			board.turn_offset = 2 * (move - 1);
+		}
+		if (!board.player)
+		{
+			board.turn_offset++;
+		}
+		
+		// The opponent's king cannot be in check:
+		if (board.check(!board.player))
+		{
+			throw new IllegalArgumentException("ERROR: Invalid FEN " + fen + ".");
+		}
+		
+		// Possible moves and chessboard cache (needed for repetition tests):
+		board.moves_compute_possible();
+		for (var x = 0; x < 8; x++)
+		{
+			board.position_caches[1].board[x] = 0;
+			for (var y = 0; y < 8; y++)
+			{
+				final var f =
+					board.board[x][y];
+				board.position_caches[1].board[x] |= (f == null
+					? 0
+					: f.key << (y * 4));
+			}
+		}
+		
+		return board;
+	}
+	
+	/*
+		Current position in Forsyth-Edwards Notation (FEN), such that 'fen(board.fen())' is a
+		board with an equal position. The en passant square is given after every double pawn
+		move, regardless of whether an en passant capture is possible.
+	*/
+	public String fen()
+	{
+		final var fen =
+			new StringBuilder(90);
+		
+		// Figure placement (from the 8th to the 1st rank):
+		for (var y = 7; y >= 0; y--)
+		{
+			var empty = 0;
+			for (var x = 0; x <= 7; x++)
+			{
+				final var f =
+					board[x][y];
+				if (f == null)
+				{
+					empty++;
+					continue;
+				}
+				if (empty > 0)
+				{
+					fen.append((char) ('0' + empty));
+					empty = 0;
+				}
+				fen.append(fen_figures.charAt(f.key));
+			}
+			if (empty > 0)
+			{
+				fen.append((char) ('0' + empty));
+			}
+			if (y > 0)
+			{
+				fen.append('/');
+			}
+		}
+		
+		// Active player and castlings:
+		fen.append(player ? " w " : " b ");
+		if (castlings_allowed == 0)
+		{
+			fen.append('-');
+		}
+		else
+		{
+			for (var castling = 0; castling < 4; castling++)
+			{
+				if (((castlings_allowed >> (castling ^ 1)) & 0x1) != 0)
+				{
+					fen.append("KQkq".charAt(castling));
+				}
+			}
+		}
+		
+		// En passant square, halfmove clock and fullmove number:
+		final var x =
+			en_passant_file();
+		if (x == -1)
+		{
+			fen.append(" -");
+		}
+		else
+		{
+			fen.append(' ').append((char) ('a' + x)).append(player ? '6' : '3');
+		}
+		fen.append(' ').append(draw_move_rules_status());
+		fen.append(' ').append(move());
+		
+		return fen.toString();
+	}
+	
+	/*
+		(Re)compute the possible moves of the current move frame, discarding any moves computed
+		before.
+	*/
+	protected void moves_compute_possible()
+	{
+		moves[moves_frame] = moves_frame + 3;
 		for (var x = 0; x <= 7; x++)
 		{
 			for (var y = 0; y <= 7; y++)
@@ -361,22 +752,57 @@ public final class Board
 	{
 		final var game_status =
 			status();
-		if (game_status == GameStatus.Normal || game_status == GameStatus.Check)
+		return (game_status == GameStatus.Normal || game_status == GameStatus.Check)
+			&& execute_possible(x, y, X, Y, figure_placed, draw_claim);
+	}
+	
+	/*
+		Execute the given move, as encoded by 'previous_move', if, and only if, it is valid and the
+		game is not already finished, given the status of the current position. Execution function
+		for the GUI to restore games without computing the status of each position twice, i.e.,
+		before and after each move.
+	*/
+	public boolean execute(final int move, final GameStatus game_status)
+	{
+		if (game_status != GameStatus.Normal && game_status != GameStatus.Check)
+		{
+			return false;
+		}
+		if (Move.is_moveless_draw_claim(move))
 		{
-			final var moves_end =
-				moves[moves_frame];
-			for (var i = moves_frame + 3; i < moves_end; i++)
+			return (draw_move_rules_status() >= 50 || draw_repetition_status() >= 3)
+				&& execute(move);
+		}
+		return execute_possible(
+			  Move.x(move)
+			, Move.y(move)
+			, Move.X(move)
+			, Move.Y(move)
+			, Move.figure_placed(move)
+			, Move.draw_claim(move));
+	}
+	
+	private boolean execute_possible(
+		  final int x
+		, final int y
+		, final int X
+		, final int Y
+		, final Figure figure_placed
+		, final boolean draw_claim)
+	{
+		final var moves_end =
+			moves[moves_frame];
+		for (var i = moves_frame + 3; i < moves_end; i++)
+		{
+			final var move =
+				moves[i];
+			if (Move.x(move) == x && Move.y(move) == y
+				&& Move.X(move) == X && Move.Y(move) == Y
+				&& Move.figure_placed(move) == figure_placed)
 			{
-				final var move =
-					moves[i];
-				if (Move.x(move) == x && Move.y(move) == y
-					&& Move.X(move) == X && Move.Y(move) == Y
-					&& Move.figure_placed(move) == figure_placed)
-				{
-					return execute(draw_claim
-						? Move.encode_draw_claim(move)
-						: move);
-				}
+				return execute(draw_claim
+					? Move.encode_draw_claim(move)
+					: move);
 			}
 		}
 		return false;
@@ -417,8 +843,14 @@ public final class Board
 				Move.Y(move);
 			final var figure_placed =
 				Move.figure_placed(move);
-			board[x][y] = null;
-			board[X][Y] = figure_placed;
+			final var figure_destination =
+				Move.figure_destination(move);
+			figure_remove(x, y);
+			if (figure_destination != null)
+			{
+				figure_remove(X, Y);
+			}
+			figure_add(figure_placed, X, Y);
 			if (figure_placed.is_king())
 			{
 				if (player)
@@ -433,8 +865,7 @@ public final class Board
 				}
 				if (X == x - 2)
 				{ // Castling queenside:
-					board[3][Y] = board[0][Y];
-					board[0][Y] = null;
+					figure_add(figure_remove(0, Y), 3, Y);
 					if (figure_placed.owner)
 					{
 						castling_done_w = true;
@@ -446,8 +877,7 @@ public final class Board
 				}
 				else if (X == x + 2)
 				{ // Castling kingside:
-					board[5][Y] = board[7][Y];
-					board[7][Y] = null;
+					figure_add(figure_remove(7, Y), 5, Y);
 					if (figure_placed.owner)
 					{
 						castling_done_w = true;
@@ -460,12 +890,15 @@ public final class Board
 			}
 			else if (figure_placed.is_pawn()
 				&& X != x
-				&& Move.figure_destination(move) == null)
+				&& figure_destination == null)
 			{
-				board[X][y] = null; // perform en passant capture
+				figure_remove(X, y); // perform en passant capture
 			}
+			hash ^= hash_keys_castlings[castlings_allowed];
 			castlings_allowed ^= Move.castling_changes(move);
+			hash ^= hash_keys_castlings[castlings_allowed];
 		}
+		hash ^= hash_key_black;
 		player = !player;
 		turn++;
 		// Update game history (push new current moves frame and compute possible moves):
@@ -488,6 +921,7 @@ public final class Board
 			if (!Move.is_moveless_draw_claim(move) && check(!player))
 			{ // Undo all changes if move threatens own king:
 				undo();
+				moves[moves_frame + 2] = 0; // never cache invalid moves
 				return false;
 			}
 			moves_compute_possible();
@@ -521,8 +955,12 @@ public final class Board
 				Move.figure_moved(move);
 			final var figure_destination =
 				Move.figure_destination(move);
-			board[x][y] = figure_moved;
-			board[X][Y] = figure_destination;
+			figure_remove(X, Y);
+			if (figure_destination != null)
+			{
+				figure_add(figure_destination, X, Y);
+			}
+			figure_add(figure_moved, x, y);
 			if (figure_moved.is_king())
 			{
 				if (player)
@@ -537,8 +975,7 @@ public final class Board
 				}
 				if (X == x - 2)
 				{ // Castling queenside:
-					board[0][Y] = board[3][Y];
-					board[3][Y] = null;
+					figure_add(figure_remove(3, Y), 0, Y);
 					if (figure_moved.owner)
 					{
 						castling_done_w = false;
@@ -550,8 +987,7 @@ public final class Board
 				}
 				else if (X == x + 2)
 				{ // Castling kingside:
-					board[7][Y] = board[5][Y];
-					board[5][Y] = null;
+					figure_add(figure_remove(5, Y), 7, Y);
 					if (figure_moved.owner)
 					{
 						castling_done_w = false;
@@ -564,15 +1000,42 @@ public final class Board
 			}
 			else if (figure_moved.is_pawn() && X != x && figure_destination == null)
 			{ // Undo en passant capture:
-				board[X][y] = Figure.pawn(!figure_moved.owner);
+				figure_add(Figure.pawn(!figure_moved.owner), X, y);
 			}
+			hash ^= hash_keys_castlings[castlings_allowed];
 			castlings_allowed ^= Move.castling_changes(move);
+			hash ^= hash_keys_castlings[castlings_allowed];
 		}
+		hash ^= hash_key_black;
 		player = !player;
 		turn--;
 		return move;
 	}
 	
+	/*
+		Legal moves of the current position, i.e., its possible moves not threatening the own
+		king, regardless of the game status.
+	*/
+	public int[] legal_moves()
+	{
+		final var possible =
+			moves_possible();
+		final var legal =
+			new int[moves_possible_count()];
+		var count = 0;
+		for (var i = 0; i < legal.length; i++)
+		{
+			final var move =
+				moves_possible(possible + i);
+			if (execute(move))
+			{
+				undo();
+				legal[count++] = move;
+			}
+		}
+		return Arrays.copyOf(legal, count);
+	}
+	
 	public int previous_move(final int turn)
 	{
 		if (turn < 1 | turn >= this.turn)
@@ -589,6 +1052,170 @@ public final class Board
 		return moves[previous_frame + 2];
 	}
 	
+	/*
+		File of the pawn that can be captured en passant in the current position or -1 if there is
+		none (i.e., the previous move was no double pawn move).
+	*/
+	protected int en_passant_file()
+	{
+		if (turn == 1)
+		{
+			return en_passant_file_initial;
+		}
+		final var move =
+			previous_move(turn - 1);
+		if (Move.is_moveless_draw_claim(move))
+		{
+			return -1;
+		}
+		if (Move.figure_moved(move).is_pawn())
+		{
+			final var distance =
+				Move.y(move) - Move.Y(move);
+			if (distance == 2 | distance == -2)
+			{
+				return Move.x(move);
+			}
+		}
+		return -1;
+	}
+	
+	/*
+		Zobrist hash of the current position. Positions with equal figure constellation, active
+		player, castling permissions and en passant capture possibilities have equal hashes.
+	*/
+	public long hash()
+	{
+		final var x =
+			en_passant_file();
+		if (x == -1)
+		{
+			return hash;
+		}
+		// Only consider en passant if the active player has a pawn to capture:
+		final var y =
+			player ? 4 : 3;
+		final var pawn =
+			Figure.pawn(player);
+		return (x > 0 && board[x - 1][y] == pawn) || (x < 7 && board[x + 1][y] == pawn)
+			? hash ^ hash_keys_en_passant[x]
+			: hash;
+	}
+	
+	/*
+		Zobrist hash of the current pawn formation (i.e., the positions of all pawns). Positions
+		with equal pawn formation have equal pawn hashes, regardless of any other figures.
+	*/
+	protected long pawn_hash()
+	{
+		return pawn_hash;
+	}
+	
+	/*
+		Put the given figure on the given empty square respectively remove the figure of the
+		given square, updating all incrementally maintained position information accordingly.
+	*/
+	private void figure_add(final Figure figure, final int x, final int y)
+	{
+		final var square =
+			(y << 3) | x;
+		final var side =
+			figure.owner ? 0 : 1;
+		board[x][y] = figure;
+		hash ^= hash_keys_figures[(figure.key << 6) | square];
+		if (figure.is_pawn())
+		{
+			pawn_hash ^= hash_keys_figures[(figure.key << 6) | square];
+		}
+		squares[figure.key] ^= 1l << square;
+		material[side] += HandcraftedEvaluator.value_table[figure.key];
+		placement_middlegame[side] +=
+			HandcraftedEvaluator.placement_table_middlegame[figure.key][square];
+		placement_endgame[side] +=
+			HandcraftedEvaluator.placement_table_endgame[figure.key][square];
+		phase += HandcraftedEvaluator.phase_table[figure.key];
+	}
+	
+	private Figure figure_remove(final int x, final int y)
+	{
+		final var figure =
+			board[x][y];
+		final var square =
+			(y << 3) | x;
+		final var side =
+			figure.owner ? 0 : 1;
+		board[x][y] = null;
+		hash ^= hash_keys_figures[(figure.key << 6) | square];
+		if (figure.is_pawn())
+		{
+			pawn_hash ^= hash_keys_figures[(figure.key << 6) | square];
+		}
+		squares[figure.key] ^= 1l << square;
+		material[side] -= HandcraftedEvaluator.value_table[figure.key];
+		placement_middlegame[side] -=
+			HandcraftedEvaluator.placement_table_middlegame[figure.key][square];
+		placement_endgame[side] -=
+			HandcraftedEvaluator.placement_table_endgame[figure.key][square];
+		phase -= HandcraftedEvaluator.phase_table[figure.key];
+		return figure;
+	}
+	
+	/*
+		Bitboard of the squares occupied by the given figure; bit 'x + 8 * y' is set if, and only
+		if, the figure is at 'x' and 'y'.
+	*/
+	protected long squares(final Figure figure)
+	{
+		return squares[figure.key];
+	}
+	
+	/*
+		Bitboard of the squares occupied by any figure of the given player.
+	*/
+	protected long occupied(final boolean player)
+	{
+		final var first =
+			player ? 1 : 7;
+		return squares[first]
+			| squares[first + 1]
+			| squares[first + 2]
+			| squares[first + 3]
+			| squares[first + 4]
+			| squares[first + 5];
+	}
+	
+	/*
+		Material value of all figures of the given player (cf.
+		'HandcraftedEvaluator.value_table').
+	*/
+	protected int material(final boolean player)
+	{
+		return material[player ? 0 : 1];
+	}
+	
+	/*
+		Middlegame respectively endgame placement value of all figures of the given player (cf.
+		'HandcraftedEvaluator.placement_table_middlegame' and
+		'HandcraftedEvaluator.placement_table_endgame').
+	*/
+	protected int placement_middlegame(final boolean player)
+	{
+		return placement_middlegame[player ? 0 : 1];
+	}
+	
+	protected int placement_endgame(final boolean player)
+	{
+		return placement_endgame[player ? 0 : 1];
+	}
+	
+	/*
+		Game phase of the current position (cf. 'HandcraftedEvaluator.phase_table').
+	*/
+	protected int phase()
+	{
+		return phase;
+	}
+	
 	public Figure figure(final int x, final int y)
 	{
 		return board[x][y];
@@ -618,11 +1245,14 @@ public final class Board
 	}
 	
 	/*
-		Current move number (each move has two turns).
+		Current move number (each move has two turns), also counting the moves played before the
+		beginning of the game history (cf. 'fen').
 	*/
 	public int move()
 	{
-		return player ? (turn / 2) + 1 : turn / 2;
+		final var ply =
+			turn + turn_offset;
+		return player ? (ply / 2) + 1 : ply / 2;
 	}
 	
 	/*
@@ -635,6 +1265,14 @@ public final class Board
 	
 	private void compute_position_caches()
 	{
+		if (position_caches[turn].is_cached)
+		{
+			return;
+		}
+		final var event =
+			new PositionCachesEvent();
+		event.begin();
+		
 		final var original_turn =
 			turn;
 		
@@ -643,6 +1281,8 @@ public final class Board
 		{
 			undo();
 		}
+		final var first_turn =
+			turn;
 		
 		// Compute caches forward (reconstructing original position):
 		while (turn != original_turn)
@@ -674,13 +1314,16 @@ public final class Board
 				}
 			}
 			
-			// Compute repetition:
+			// Compute repetition (just positions since the last capture or pawn move can repeat,
+			//   such that the costs per position are bounded by the move rules):
 			final var moves_count =
 				moves_possible_count();
+			final var first_turn_repeatable =
+				Math.max(turn - position_caches[turn].move_rules_counter, 1);
 			var repetition_increase = 0;
-			for (int t = 1, m = 0;
-				t < turn;
-				t++, m = moves[m])
+			for (int t = turn - 1, m = moves[moves_frame + 1];
+				t >= first_turn_repeatable;
+				t--, m = moves[m + 1])
 			{
 				if (!Move.is_moveless_draw_claim(move)
 					&& position_caches[turn].move_rules_counter != 0
@@ -709,6 +1352,14 @@ public final class Board
 			
 			position_caches[turn].is_cached = true;
 		}
+		
+		event.end();
+		if (event.shouldCommit())
+		{
+			event.turn = original_turn;
+			event.positions = original_turn - first_turn;
+			event.commit();
+		}
 	}
 	
 	/*
@@ -763,6 +1414,23 @@ public final class Board
 	}
 	
 	public GameStatus status()
+	{
+		final var event =
+			new StatusEvent();
+		event.begin();
+		final var status =
+			compute_status();
+		event.end();
+		if (event.shouldCommit())
+		{
+			event.turn = turn;
+			event.status = status.name();
+			event.commit();
+		}
+		return status;
+	}
+	
+	private GameStatus compute_status()
 	{
 		final var moves_end =
 			moves[moves_frame];
@@ -0,0 +1,139 @@
+/*
+	This program and the accompanying materials are made available under the terms of the MIT
+	license (X11 license) which accompanies this distribution.
+	
+	Author: Christoff Bürger
+*/
+
+package pmchess.logic;
+
+import java.io.*;
+
+/*
+	Headless engine answering requests for best moves line by line, e.g., for batch analyses
+	of positions. Each request is a position, either 'startpos' (the initial position) or a
+	position in Forsyth-Edwards Notation, optionally followed by 'moves' and a sequence of moves
+	in coordinate notation (cf. 'Move.coordinate_notation') played from the position:
+	
+	  startpos moves e2e4 e7e5
+	  r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - 0 1
+	
+	Each request is answered by a line 'bestmove m', with 'm' the move selected by 'Search'
+	or 'none' if the game is finished or the computer would resign (all moves lose), or by a
+	line 'error message' for invalid or otherwise failing requests; failing requests do not
+	end the engine. Empty lines are ignored and 'quit' ends the engine.
+*/
+public final class Engine
+{
+	private Engine() // No instances.
+	{
+	}
+	
+	/*
+		Answer all requests of the given input, searching moves with the given search depth (cf.
+		'Search.set_search_depth'), until the input ends or 'quit' is requested.
+	*/
+	public static void run(
+		  final BufferedReader input
+		, final PrintStream output
+		, final int search_depth)
+		throws IOException
+	{
+		final var search =
+			new Search();
+		final var evaluator =
+			new HandcraftedEvaluator(false, 0);
+		for (var line = input.readLine(); line != null; line = input.readLine())
+		{
+			final var request =
+				line.trim();
+			if (request.isEmpty())
+			{
+				continue;
+			}
+			if (request.equals("quit"))
+			{
+				break;
+			}
+			try
+			{
+				final var board =
+					position(request);
+				final var status =
+					board.status();
+				var best_move = 0;
+				if (status == Board.GameStatus.Normal || status == Board.GameStatus.Check)
+				{
+					search.set_search_depth(search_depth);
+					best_move = search.select_move(board, evaluator);
+				}
+				output.println("bestmove "
+					+ (best_move == 0 ? "none" : Move.coordinate_notation(best_move)));
+			}
+			catch (final IllegalArgumentException exception)
+			{
+				output.println("error " + exception.getMessage());
+			}
+			catch (final RuntimeException exception)
+			{ // Report unexpected failures and continue with the next request:
+				output.println("error ERROR: Request " + request + " failed (" + exception + ").");
+			}
+			output.flush();
+		}
+	}
+	
+	/*
+		Board of the position of the given request (cf. 'Engine'). Throws an
+		'IllegalArgumentException' if the position or any of its moves is invalid.
+	*/
+	public static Board position(final String request)
+	{
+		final var fields =
+			request.split("\\s+moves(\\s+|$)", 2);
+		final var board =
+			fields[0].equals("startpos")
+				? new Board()
+				: Board.fen(fields[0]);
+		if (fields.length > 1 && !fields[1].isBlank())
+		{
+			for (final var move : fields[1].trim().split("\\s+"))
+			{
+				execute(board, move);
+			}
+		}
+		return board;
+	}
+	
+	private static void execute(final Board board, final String move)
+	{
+		final var promotion =
+			move.length() == 5 ? "rnbq".indexOf(move.charAt(4)) : -1;
+		if ((move.length() != 4 && promotion == -1)
+			|| move.charAt(0) < 'a' || move.charAt(0) > 'h'
+			|| move.charAt(1) < '1' || move.charAt(1) > '8'
+			|| move.charAt(2) < 'a' || move.charAt(2) > 'h'
+			|| move.charAt(3) < '1' || move.charAt(3) > '8')
+		{
+			throw new IllegalArgumentException("ERROR: Invalid move " + move + ".");
+		}
+		final var x =
+			move.charAt(0) - 'a';
+		final var y =
+			move.charAt(1) - '1';
+		final var figure_placed =
+			promotion == -1
+				? board.figure(x, y)
+				: Figure.figures[promotion + (board.player() ? 2 : 8)];
+		if (figure_placed == null
+			|| !board.execute(
+				  x
+				, y
+				, move.charAt(2) - 'a'
+				, move.charAt(3) - '1'
+				, figure_placed
+				, false))
+		{
+			throw new IllegalArgumentException("ERROR: Invalid move " + move + ".");
+		}
+	}
+}
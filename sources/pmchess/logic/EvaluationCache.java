@@ -0,0 +1,98 @@
+/*
+	This program and the accompanying materials are made available under the terms of the MIT
+	license (X11 license) which accompanies this distribution.
+	
+	Author: Christoff Bürger
+*/
+
+package pmchess.logic;
+
+/*
+	Fixed-size cache of position scores, indexed by position hash (cf. 'Board.hash'), which any
+	evaluator can use to score positions already scored just once, e.g., transpositions and
+	positions of repeated searches. Evaluators must only cache exact scores (not the bounds of
+	staged evaluations) and must salt their keys, such that evaluators scoring differently
+	never share entries (cf. 'key').
+	
+	Like 'PawnHashTable', the cache is lockless and can be shared by concurrent searches: each
+	entry consists of its score and its key XOR its score. Entries torn by concurrent stores
+	fail the key check and are just misses. The cache has no counters written by all threads;
+	probes and hits are counted by the statistics of the probing search, if enabled (cf.
+	'SearchStatistics.current').
+*/
+public final class EvaluationCache
+{
+	private final long[] keys;
+	private final long[] scores;
+	private final int index_mask;
+	
+	/*
+		Cache with 2^'size_log2' entries, each of 16 bytes.
+	*/
+	public EvaluationCache(final int size_log2)
+	{
+		if (size_log2 < 0 || size_log2 > 28)
+		{
+			throw new IllegalArgumentException("ERROR: Invalid evaluation cache size.");
+		}
+		keys = new long[1 << size_log2];
+		scores = new long[1 << size_log2];
+		index_mask = (1 << size_log2) - 1;
+		clear();
+	}
+	
+	/*
+		Key of the score of the given player in the current position of the given board for
+		evaluators with the given salt.
+	*/
+	protected static long key(final Board board, final boolean player, final long salt)
+	{
+		final var key =
+			board.hash() ^ salt;
+		return player ? key : ~key;
+	}
+	
+	/*
+		Cached score of the given key or 'miss' if there is none.
+	*/
+	protected int probe(final long key, final int miss)
+	{
+		final var i =
+			(int) key & index_mask;
+		final var score =
+			scores[i];
+		final var hit =
+			(keys[i] ^ score) == key;
+		if (SearchStatistics.enabled)
+		{
+			final var statistics =
+				SearchStatistics.current.get();
+			if (statistics != null)
+			{
+				statistics.cache_probes++;
+				statistics.cache_hits += hit ? 1 : 0;
+			}
+		}
+		return hit ? (int) score : miss;
+	}
+	
+	/*
+		Cache the given score for the given key, replacing any previous entry of the same index.
+	*/
+	protected void store(final long key, final int score)
+	{
+		final var i =
+			(int) key & index_mask;
+		scores[i] = score;
+		keys[i] = key ^ score;
+	}
+	
+	public void clear()
+	{
+		for (var i = 0; i < keys.length; i++)
+		{
+			keys[i] = -1l;
+			scores[i] = 0;
+		}
+	}
+}
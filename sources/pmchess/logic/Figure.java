@@ -115,26 +115,6 @@ public sealed abstract class Figure permits
 		{
 		}
 		
-		private static int possible_enpassant(final Board board)
-		{
-			final var move =
-				board.previous_move(board.turn() - 1);
-			if (move == 0)
-			{
-				return -1;
-			}
-			if (Move.figure_moved(move).is_pawn())
-			{
-				final var distance =
-					Move.y(move) - Move.Y(move);
-				if (distance == 2 | distance == -2)
-				{
-					return Move.x(move);
-				}
-			}
-			return -1;
-		}
-		
 		private void moves_add(
 			  final Board board
 			, final int x
@@ -166,7 +146,7 @@ public sealed abstract class Figure permits
 			if (owner)
 			{
 				final var en_passant =
-					y == 4 ? possible_enpassant(board) : -1;
+					y == 4 ? board.en_passant_file() : -1;
 				var Y = y + 1;
 				if (xm1 >= 0)
 				{
@@ -196,7 +176,7 @@ public sealed abstract class Figure permits
 			else
 			{
 				final var en_passant =
-					y == 3 ? possible_enpassant(board) : -1;
+					y == 3 ? board.en_passant_file() : -1;
 				var Y =
 					y - 1;
 				if (xm1 >= 0)
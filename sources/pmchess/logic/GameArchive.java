@@ -0,0 +1,528 @@
+/*
+	This program and the accompanying materials are made available under the terms of the MIT
+	license (X11 license) which accompanies this distribution.
+	
+	Author: Christoff Bürger
+*/
+
+package pmchess.logic;
+
+import java.util.*;
+import java.util.function.*;
+
+import java.io.*;
+
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.file.*;
+
+/*
+	Compact binary archive of games, e.g., imported from PGN files, with random access to each
+	game. An archive consists of two files: the archive file with the records of all games and
+	its index file (the archive file name with suffix '.index') with the offset of each record.
+	Both files are memory-mapped for reading, such that games are read without any copying
+	and parsing, just decoding the moves of the games that are actually replayed. Archive files
+	of any size are mapped in segments, each overlapping the next by the maximal record size,
+	such that every record is within the segment it starts in.
+	
+	The archive file starts with the magic number 'pmChessA', the version of the format (int)
+	and the fingerprint of the move encoding (int, cf. 'move_encoding'), followed by the game
+	records:
+	
+	+-----------------------------+------------------------------------------------------------+
+	| Result (byte)               | 0: unknown ('*'), 1: '1-0', 2: '1/2-1/2', 3: '0-1'.        |
+	+-----------------------------+------------------------------------------------------------+
+	| Plies (unsigned short)      | Number of moves of the game.                               |
+	+-----------------------------+------------------------------------------------------------+
+	| Tags length (unsigned short)| Number of bytes of the tags.                               |
+	+-----------------------------+------------------------------------------------------------+
+	| Tags                        | Name and value of each tag, each in the modified UTF-8 of  |
+	|                             | 'DataOutput.writeUTF'; a 'FEN' tag is the initial position.|
+	+-----------------------------+------------------------------------------------------------+
+	| Moves (unsigned shorts)     | Index of each move within the possible moves of its        |
+	|                             | position (cf. 'Board.moves_possible'), with bit 15 set for |
+	|                             | draw claims; 0xFFFF for moveless draw claims.              |
+	+-----------------------------+------------------------------------------------------------+
+	
+	The index file starts with the magic number 'pmChessI' and the number of games (int),
+	followed by the offset of each record and the offset of the end of the last record (long).
+	All numbers are big-endian.
+*/
+public final class GameArchive
+{
+	private static final long magic_archive = 0x706D436865737341l; // 'pmChessA'
+	private static final long magic_index = 0x706D436865737349l; // 'pmChessI'
+	private static final int version = 2;
+	private static final int header_size = 16;
+	private static final int segment_bits = 30; // Bytes of records per mapped segment (1 GiB).
+	private static final int record_size_max = 5 + 0xFFFF + 2 * 0xFFFF;
+	private static final int moveless_draw_claim = 0xFFFF;
+	private static final int draw_claim = 0x8000;
+	private static final String[] results = {"*", "1-0", "1/2-1/2", "0-1"};
+	
+	/*
+		Fingerprint of the move encoding, i.e., of the order of the possible moves of reference
+		positions (cf. 'Board.moves_possible'), covering all kinds of moves. Moves are stored as
+		indices into this order; archives of other move generations are therefore rejected on
+		opening, instead of silently decoding wrong moves.
+	*/
+	private static final int move_encoding =
+		move_encoding(
+			  "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1"
+			, "r3k2r/1P4p1/8/3pP3/8/8/6p1/R3K2R w KQkq d6 0 1"
+			, "r3k2r/1P4p1/8/8/3pP3/8/6p1/R3K2R b KQkq e3 0 1");
+	
+	private final MappedByteBuffer[] archive;
+	private final MappedByteBuffer index;
+	private final int games;
+	
+	private GameArchive(final MappedByteBuffer[] archive, final MappedByteBuffer index)
+	{
+		this.archive = archive;
+		this.index = index;
+		this.games = index.getInt(8);
+	}
+	
+	private static int move_encoding(final String... fens)
+	{
+		var fingerprint =
+			0l;
+		for (final var fen : fens)
+		{
+			final var board =
+				Board.fen(fen);
+			final var possible =
+				board.moves_possible();
+			for (var i = 0; i < board.moves_possible_count(); i++)
+			{
+				fingerprint = Board.hash_mix(fingerprint ^ board.moves_possible(possible + i));
+			}
+		}
+		return (int) fingerprint;
+	}
+	
+	private static Path index_file(final Path archive)
+	{
+		return archive.resolveSibling(archive.getFileName() + ".index");
+	}
+	
+	/*
+		Open the given archive for reading. Throws an 'IOException' if the archive or its index
+		cannot be read or are invalid.
+	*/
+	public static GameArchive open(final Path archive) throws IOException
+	{
+		final long size;
+		final MappedByteBuffer[] segments;
+		final MappedByteBuffer index_buffer;
+		try (final var channel = FileChannel.open(archive, StandardOpenOption.READ))
+		{
+			size = channel.size();
+			final var header =
+				ByteBuffer.allocate(header_size);
+			channel.read(header, 0);
+			if (size < header_size || header.getLong(0) != magic_archive)
+			{
+				throw new IOException("ERROR: Invalid archive " + archive + ".");
+			}
+			if (header.getInt(8) != version || header.getInt(12) != move_encoding)
+			{
+				throw new IOException(
+					"ERROR: Archive " + archive + " of another pmChess version; import it again.");
+			}
+			segments = new MappedByteBuffer[(int) (((size - 1) >>> segment_bits) + 1)];
+			for (var segment = 0; segment < segments.length; segment++)
+			{
+				final var begin =
+					(long) segment << segment_bits;
+				segments[segment] = channel.map(
+					  FileChannel.MapMode.READ_ONLY
+					, begin
+					, Math.min((1l << segment_bits) + record_size_max, size - begin));
+			}
+		}
+		try (final var channel = FileChannel.open(index_file(archive), StandardOpenOption.READ))
+		{
+			if (channel.size() > Integer.MAX_VALUE)
+			{
+				throw new IOException("ERROR: Index of archive " + archive + " too large.");
+			}
+			index_buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		}
+		if (index_buffer.capacity() < 12 || index_buffer.getLong(0) != magic_index
+			|| index_buffer.capacity() != 12 + 8l * (index_buffer.getInt(8) + 1l)
+			|| index_buffer.getLong(index_buffer.capacity() - 8) != size)
+		{
+			throw new IOException("ERROR: Invalid archive " + archive + ".");
+		}
+		return new GameArchive(segments, index_buffer);
+	}
+	
+	/*
+		Number of games of the archive.
+	*/
+	public int games()
+	{
+		return games;
+	}
+	
+	private long record(final int game)
+	{
+		if (game < 0 || game >= games)
+		{
+			throw new IndexOutOfBoundsException("ERROR: Invalid game " + game + ".");
+		}
+		return index.getLong(12 + 8 * game);
+	}
+	
+	/*
+		Mapped segment containing the given record, which starts at its 'position' in it.
+	*/
+	private MappedByteBuffer segment(final long record)
+	{
+		return archive[(int) (record >>> segment_bits)];
+	}
+	
+	private static int position(final long record)
+	{
+		return (int) (record & ((1 << segment_bits) - 1));
+	}
+	
+	/*
+		Result of the given game ('1-0', '0-1', '1/2-1/2' or '*'), read without decoding the
+		game.
+	*/
+	public String result(final int game)
+	{
+		final var record =
+			record(game);
+		return results[segment(record).get(position(record)) & 0x3];
+	}
+	
+	/*
+		Number of moves of the given game, read without decoding the game.
+	*/
+	public int plies(final int game)
+	{
+		final var record =
+			record(game);
+		return Short.toUnsignedInt(segment(record).getShort(position(record) + 1));
+	}
+	
+	public Map<String, String> tags(final int game)
+	{
+		final var record =
+			record(game);
+		final var segment =
+			segment(record);
+		final var position =
+			position(record);
+		final var tags =
+			new byte[Short.toUnsignedInt(segment.getShort(position + 3))];
+		segment.get(position + 5, tags);
+		final var input =
+			new DataInputStream(new ByteArrayInputStream(tags));
+		final var result =
+			new LinkedHashMap<String, String>();
+		try
+		{
+			while (input.available() > 0)
+			{
+				result.put(input.readUTF(), input.readUTF());
+			}
+		}
+		catch (final IOException exception)
+		{
+			throw new IllegalStateException("ERROR: Invalid tags of game " + game + ".");
+		}
+		return result;
+	}
+	
+	/*
+		Replay the given game, passing the board to the given consumer for each position of the
+		game, starting with its initial position. The consumer must not change the board.
+	*/
+	public void replay(final int game, final Consumer<Board> positions)
+	{
+		replay(game, initial_board(game, new Board()), positions);
+	}
+	
+	/*
+		Board of the initial position of the given game: the given board, which must not be of
+		a FEN position, reset to the initial chess position or, for games starting from a 'FEN'
+		tag, a new board. Boards thereby can be reused to replay many games.
+	*/
+	protected Board initial_board(final int game, final Board board)
+	{
+		final var fen =
+			tags(game).get("FEN");
+		if (fen != null)
+		{
+			return Board.fen(fen);
+		}
+		while (board.undo() != 0)
+		{
+		}
+		return board;
+	}
+	
+	/*
+		Replay the given game on the given board, which must be in the initial position of the
+		game (cf. 'initial_board').
+	*/
+	protected void replay(final int game, final Board board, final Consumer<Board> positions)
+	{
+		final var record =
+			record(game);
+		final var segment =
+			segment(record);
+		final var position =
+			position(record);
+		final var plies =
+			Short.toUnsignedInt(segment.getShort(position + 1));
+		final var moves_begin =
+			position + 5 + Short.toUnsignedInt(segment.getShort(position + 3));
+		positions.accept(board);
+		for (var ply = 0; ply < plies; ply++)
+		{
+			board.execute(decode(board, segment.getShort(moves_begin + 2 * ply)));
+			positions.accept(board);
+		}
+	}
+	
+	/*
+		The given game with its tags, result and decoded moves (cf. 'PGN.Game').
+	*/
+	public PGN.Game game(final int game)
+	{
+		final var tags =
+			tags(game);
+		final var moves =
+			new int[plies(game)];
+		final var ply =
+			new int[]{-1};
+		replay(game, (final Board board) ->
+		{
+			if (ply[0] >= 0)
+			{
+				moves[ply[0]] = board.previous_move(board.turn() - 1);
+			}
+			ply[0]++;
+		});
+		return new PGN.Game(tags, moves, result(game));
+	}
+	
+	/*
+		Encoded move of the given game after the given number of plies (cf. 'decode') or -1 if
+		the game ended.
+	*/
+	protected int move(final int game, final int ply)
+	{
+		final var record =
+			record(game);
+		final var segment =
+			segment(record);
+		final var position =
+			position(record);
+		return ply < Short.toUnsignedInt(segment.getShort(position + 1))
+			? Short.toUnsignedInt(segment.getShort(
+				position + 5 + Short.toUnsignedInt(segment.getShort(position + 3)) + 2 * ply))
+			: -1;
+	}
+	
+	/*
+		Move of the given board's current position of the given encoded move.
+	*/
+	protected static int decode(final Board board, final int encoded)
+	{
+		final var index =
+			encoded & 0xFFFF;
+		if (index == moveless_draw_claim)
+		{
+			return Move.encode_moveless_draw_claim();
+		}
+		final var move =
+			board.moves_possible(board.moves_possible() + (index & ~draw_claim));
+		if (move == 0)
+		{
+			throw new IllegalStateException("ERROR: Invalid move in archive.");
+		}
+		return (index & draw_claim) != 0 ? Move.encode_draw_claim(move) : move;
+	}
+	
+	private static short encode(final Board board, final int move)
+	{
+		if (Move.is_moveless_draw_claim(move))
+		{
+			return (short) moveless_draw_claim;
+		}
+		final var possible =
+			board.moves_possible();
+		final var claim =
+			Move.encode_draw_claim(move);
+		for (var i = 0; i < board.moves_possible_count(); i++)
+		{
+			if (Move.encode_draw_claim(board.moves_possible(possible + i)) == claim)
+			{
+				return (short) (Move.draw_claim(move) ? i | draw_claim : i);
+			}
+		}
+		throw new IllegalArgumentException("ERROR: Invalid move " + move + ".");
+	}
+	
+	/*
+		Writer of new archives. Games can be added concurrently; they are encoded in parallel
+		and appended in the order their encoding finished.
+	*/
+	public static final class Writer implements Closeable
+	{
+		private final Path archive;
+		private final DataOutputStream output;
+		private long size = header_size;
+		private long[] offsets =
+			new long[1024];
+		private int games = 0;
+		
+		/* Boards of the threads adding games, reused for all their games not of FEN positions: */
+		private final ThreadLocal<Board> boards =
+			ThreadLocal.withInitial(Board::new);
+		
+		/*
+			Create the given archive, replacing any existing archive.
+		*/
+		public Writer(final Path archive) throws IOException
+		{
+			this.archive = archive;
+			output = new DataOutputStream(new BufferedOutputStream(
+				Files.newOutputStream(archive), 65536));
+			output.writeLong(magic_archive);
+			output.writeInt(version);
+			output.writeInt(move_encoding);
+		}
+		
+		/*
+			Add a game with the given tags, moves played from its initial position (the 'FEN'
+			tag, if given, otherwise the initial chess position) and result. Throws an
+			'IllegalArgumentException' if the game is invalid.
+		*/
+		public void add(final Map<String, String> tags, final int[] moves, final String result)
+			throws IOException
+		{
+			final var result_code =
+				Arrays.asList(results).indexOf(result);
+			if (result_code == -1 || moves.length > 0xFFFF)
+			{
+				throw new IllegalArgumentException("ERROR: Invalid game.");
+			}
+			
+			// Tags:
+			final var tags_bytes =
+				new ByteArrayOutputStream(256);
+			final var tags_output =
+				new DataOutputStream(tags_bytes);
+			for (final var tag : tags.entrySet())
+			{
+				tags_output.writeUTF(tag.getKey());
+				tags_output.writeUTF(tag.getValue());
+			}
+			if (tags_bytes.size() > 0xFFFF)
+			{
+				throw new IllegalArgumentException("ERROR: Invalid game (tags too long).");
+			}
+			
+			// Moves:
+			final var fen =
+				tags.get("FEN");
+			final var board =
+				fen == null ? boards.get() : Board.fen(fen);
+			while (board.undo() != 0)
+			{
+			}
+			final var encoded =
+				ByteBuffer.allocate(5 + tags_bytes.size() + 2 * moves.length);
+			encoded.put((byte) result_code);
+			encoded.putShort((short) moves.length);
+			encoded.putShort((short) tags_bytes.size());
+			encoded.put(tags_bytes.toByteArray());
+			for (final var move : moves)
+			{
+				encoded.putShort(encode(board, move));
+				if (!board.execute(move))
+				{
+					throw new IllegalArgumentException("ERROR: Invalid move " + move + ".");
+				}
+			}
+			
+			synchronized (this)
+			{
+				if (12 + 8l * (games + 2) > Integer.MAX_VALUE)
+				{ // The index could not be mapped anymore.
+					throw new IOException("ERROR: Archive " + archive + " has too many games.");
+				}
+				output.write(encoded.array());
+				if (games + 1 == offsets.length)
+				{
+					offsets = Arrays.copyOf(offsets, 2 * offsets.length);
+				}
+				offsets[games++] = size;
+				size += encoded.capacity();
+			}
+		}
+		
+		public void add(final PGN.Game game) throws IOException
+		{
+			add(game.tags(), game.moves(), game.result());
+		}
+		
+		/*
+			Finish the archive, writing its index.
+		*/
+		@Override public synchronized void close() throws IOException
+		{
+			output.close();
+			offsets[games] = size;
+			try (final var index = new DataOutputStream(new BufferedOutputStream(
+				Files.newOutputStream(index_file(archive)), 65536)))
+			{
+				index.writeLong(magic_index);
+				index.writeInt(games);
+				for (var game = 0; game <= games; game++)
+				{
+					index.writeLong(offsets[game]);
+				}
+			}
+		}
+	}
+	
+	/*
+		Import all games of the given PGN file into a new archive, reading the PGN file with the
+		given number of threads (cf. 'PGN.read'). Invalid games are skipped and reported to the
+		given consumer. Returns the number of games imported.
+	*/
+	public static long import_pgn(
+		  final Path pgn
+		, final Path archive
+		, final int threads
+		, final Consumer<String> invalid)
+		throws IOException
+	{
+		try (final var writer = new Writer(archive))
+		{
+			return PGN.read(pgn, threads, (final PGN.Game game) ->
+			{
+				try
+				{
+					writer.add(game);
+				}
+				catch (final IOException exception)
+				{
+					throw new UncheckedIOException(exception);
+				}
+			}, invalid);
+		}
+		catch (final UncheckedIOException exception)
+		{
+			throw exception.getCause();
+		}
+	}
+}
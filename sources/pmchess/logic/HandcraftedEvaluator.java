@@ -0,0 +1,727 @@
+/*
+	This program and the accompanying materials are made available under the terms of the MIT
+	license (X11 license) which accompanies this distribution.
+	
+	Author: Christoff Bürger
+*/
+
+package pmchess.logic;
+
+/*
+	Evaluation of positions by handcrafted scoring criteria (material, placement, pawn formation,
+	development and mobility).
+*/
+public final class HandcraftedEvaluator implements Evaluator
+{
+	private static final int[] random_shifts =
+		{0, 0, 0, 0, 0, 5, 5, 5, 10, 10, 20};
+	
+	/*
+		Random shifts are not really random, but derived from the hash of the scored position and
+		the evaluator's seed. Hence, the same position always gets the same shift from the same
+		evaluator, while evaluators with different seeds vary. Evaluators without noise never
+		shift.
+	*/
+	private final boolean noise;
+	private final long noise_seed;
+	
+	private final PawnHashTable pawn_hash_table =
+		new PawnHashTable(14);
+	private final EvaluationCache evaluation_cache;
+	private final long evaluation_cache_salt;
+	
+	/*
+		Salts of the castlings done by White and Black: the development score depends on them,
+		but the position hash does not (cf. 'score').
+	*/
+	private static final long castling_done_salt_w =
+		Board.hash_mix(0x636173746C696E67l);
+	private static final long castling_done_salt_b =
+		Board.hash_mix(~0x636173746C696E67l);
+	
+	/*
+		Evaluator with noise of an arbitrary seed.
+	*/
+	public HandcraftedEvaluator()
+	{
+		this(true, System.nanoTime());
+	}
+	
+	public HandcraftedEvaluator(final boolean noise, final long noise_seed)
+	{
+		this(noise, noise_seed, new EvaluationCache(16));
+	}
+	
+	/*
+		Evaluator using the given evaluation cache, which can be shared with other evaluators.
+	*/
+	public HandcraftedEvaluator(
+		  final boolean noise
+		, final long noise_seed
+		, final EvaluationCache evaluation_cache)
+	{
+		this.noise = noise;
+		this.noise_seed = noise_seed;
+		this.evaluation_cache = evaluation_cache;
+		// Evaluators without noise score equally, regardless of their seed:
+		evaluation_cache_salt = Board.hash_mix(noise ? noise_seed : 0);
+	}
+	
+	/*
+		Cache of the pawn formation scores of this evaluator (e.g., to query its hit rate).
+	*/
+	public PawnHashTable pawn_hash_table()
+	{
+		return pawn_hash_table;
+	}
+	
+	@Override public EvaluationCache evaluation_cache()
+	{
+		return evaluation_cache;
+	}
+	
+	/*
+		The given score in centipawns, i.e., hundredths of the material value of a pawn.
+	*/
+	public static int centipawns(final int score)
+	{
+		return score * 100 / (weight_material * value_table[1]);
+	}
+	
+	/*
+		Weights of the scoring criteria:
+	*/
+	protected static final int weight_material = 15;
+	protected static final int weight_placement = 1;
+	protected static final int weight_pawn_formation = 3;
+	protected static final int weight_development = 2;
+	
+	protected static final int[] value_table =
+		{
+			  0  // null
+		// White figures:
+			, 1  // pawn
+			, 5  // rook
+			, 3  // knight
+			, 3  // bishop
+			, 9  // queen
+			, 10 // king
+		// Black figures:
+			, 1
+			, 5
+			, 3
+			, 3
+			, 9
+			, 10
+		};
+	
+	/*
+		Weight of each figure for the game phase: the sum of the weights of all figures on the
+		board is the phase, from 'phase_max' (all figures; middlegame) to 0 (just kings and
+		pawns; endgame). The phase is summed up incrementally by 'Board' (cf. 'Board.phase').
+		Middlegame and endgame scores are interpolated according to the phase.
+	*/
+	protected static final int[] phase_table =
+		{
+			  0 // null
+		// White figures:
+			, 0 // pawn
+			, 2 // rook
+			, 1 // knight
+			, 1 // bishop
+			, 4 // queen
+			, 0 // king
+		// Black figures:
+			, 0
+			, 2
+			, 1
+			, 1
+			, 4
+			, 0
+		};
+	protected static final int phase_max = 24;
+	
+	/*
+		Middlegame and endgame placement bonuses and penalties of White's figures (piece-square
+		tables), given by rank from the 8th to the 1st, i.e., the chessboard as seen by White:
+	*/
+	private static final int[][] placement_bonus_middlegame =
+		{
+			  { // Pawn (advanced and central pawns):
+				    0,   0,   0,   0,   0,   0,   0,   0
+				,  12,  12,  12,  14,  14,  12,  12,  12
+				,   6,   6,   8,  10,  10,   8,   6,   6
+				,   2,   2,   4,   8,   8,   4,   2,   2
+				,   0,   0,   2,   6,   6,   2,   0,   0
+				,   1,   0,   0,   2,   2,   0,   0,   1
+				,   0,   0,   0,   0,   0,   0,   0,   0
+				,   0,   0,   0,   0,   0,   0,   0,   0
+			  }
+			, { // Rook (7th rank and central files of the base rank):
+				    0,   0,   0,   0,   0,   0,   0,   0
+				,   2,   4,   4,   4,   4,   4,   4,   2
+				,  -1,   0,   0,   0,   0,   0,   0,  -1
+				,  -1,   0,   0,   0,   0,   0,   0,  -1
+				,  -1,   0,   0,   0,   0,   0,   0,  -1
+				,  -1,   0,   0,   0,   0,   0,   0,  -1
+				,  -1,   0,   0,   0,   0,   0,   0,  -1
+				,   0,   0,   0,   1,   1,   0,   0,   0
+			  }
+			, { // Knight (center bonus, rim and corner penalties):
+				  -10,  -6,  -4,  -4,  -4,  -4,  -6, -10
+				,  -6,  -2,   0,   1,   1,   0,  -2,  -6
+				,  -4,   1,   3,   4,   4,   3,   1,  -4
+				,  -4,   1,   4,   5,   5,   4,   1,  -4
+				,  -4,   0,   4,   5,   5,   4,   0,  -4
+				,  -4,   1,   3,   3,   3,   3,   1,  -4
+				,  -6,  -2,   0,   1,   1,   0,  -2,  -6
+				, -10,  -6,  -4,  -4,  -4,  -4,  -6, -10
+			  }
+			, { // Bishop (center and long diagonals bonus, rim penalty):
+				   -4,  -2,  -2,  -2,  -2,  -2,  -2,  -4
+				,  -2,   0,   0,   0,   0,   0,   0,  -2
+				,  -2,   0,   1,   2,   2,   1,   0,  -2
+				,  -2,   1,   1,   2,   2,   1,   1,  -2
+				,  -2,   0,   2,   2,   2,   2,   0,  -2
+				,  -2,   2,   2,   2,   2,   2,   2,  -2
+				,  -2,   1,   0,   0,   0,   0,   1,  -2
+				,  -4,  -2,  -2,  -2,  -2,  -2,  -2,  -4
+			  }
+			, { // Queen (slight center bonus):
+				   -4,  -2,  -2,  -1,  -1,  -2,  -2,  -4
+				,  -2,   0,   0,   0,   0,   0,   0,  -2
+				,  -2,   0,   1,   1,   1,   1,   0,  -2
+				,  -1,   0,   1,   1,   1,   1,   0,  -1
+				,   0,   0,   1,   1,   1,   1,   0,  -1
+				,  -2,   1,   1,   1,   1,   1,   0,  -2
+				,  -2,   0,   1,   0,   0,   0,   0,  -2
+				,  -4,  -2,  -2,  -1,  -1,  -2,  -2,  -4
+			  }
+			, { // King (sheltered behind own pawns):
+				   -6,  -8,  -8, -10, -10,  -8,  -8,  -6
+				,  -6,  -8,  -8, -10, -10,  -8,  -8,  -6
+				,  -6,  -8,  -8, -10, -10,  -8,  -8,  -6
+				,  -6,  -8,  -8, -10, -10,  -8,  -8,  -6
+				,  -4,  -6,  -6,  -8,  -8,  -6,  -6,  -4
+				,  -2,  -4,  -4,  -4,  -4,  -4,  -4,  -2
+				,   4,   4,   0,   0,   0,   0,   4,   4
+				,   4,   6,   2,   0,   0,   2,   6,   4
+			  }
+		};
+	
+	private static final int[][] placement_bonus_endgame =
+		{
+			  { // Pawn (advanced pawns, regardless of their file):
+				    0,   0,   0,   0,   0,   0,   0,   0
+				,  20,  20,  20,  20,  20,  20,  20,  20
+				,  12,  12,  12,  12,  12,  12,  12,  12
+				,   7,   7,   7,   7,   7,   7,   7,   7
+				,   4,   4,   4,   4,   4,   4,   4,   4
+				,   2,   2,   2,   2,   2,   2,   2,   2
+				,   0,   0,   0,   0,   0,   0,   0,   0
+				,   0,   0,   0,   0,   0,   0,   0,   0
+			  }
+			, { // Rook (7th rank):
+				    0,   0,   0,   0,   0,   0,   0,   0
+				,   3,   3,   3,   3,   3,   3,   3,   3
+				,   0,   0,   0,   0,   0,   0,   0,   0
+				,   0,   0,   0,   0,   0,   0,   0,   0
+				,   0,   0,   0,   0,   0,   0,   0,   0
+				,   0,   0,   0,   0,   0,   0,   0,   0
+				,   0,   0,   0,   0,   0,   0,   0,   0
+				,   0,   0,   0,   0,   0,   0,   0,   0
+			  }
+			, { // Knight (center bonus, rim and corner penalties):
+				   -8,  -5,  -3,  -3,  -3,  -3,  -5,  -8
+				,  -5,  -2,   0,   1,   1,   0,  -2,  -5
+				,  -3,   0,   2,   3,   3,   2,   0,  -3
+				,  -3,   1,   3,   4,   4,   3,   1,  -3
+				,  -3,   1,   3,   4,   4,   3,   1,  -3
+				,  -3,   0,   2,   3,   3,   2,   0,  -3
+				,  -5,  -2,   0,   1,   1,   0,  -2,  -5
+				,  -8,  -5,  -3,  -3,  -3,  -3,  -5,  -8
+			  }
+			, { // Bishop (center bonus, rim penalty):
+				   -3,  -2,  -2,  -2,  -2,  -2,  -2,  -3
+				,  -2,   0,   0,   0,   0,   0,   0,  -2
+				,  -2,   0,   1,   1,   1,   1,   0,  -2
+				,  -2,   0,   1,   2,   2,   1,   0,  -2
+				,  -2,   0,   1,   2,   2,   1,   0,  -2
+				,  -2,   0,   1,   1,   1,   1,   0,  -2
+				,  -2,   0,   0,   0,   0,   0,   0,  -2
+				,  -3,  -2,  -2,  -2,  -2,  -2,  -2,  -3
+			  }
+			, { // Queen (center bonus):
+				   -4,  -2,  -2,  -2,  -2,  -2,  -2,  -4
+				,  -2,   0,   0,   0,   0,   0,   0,  -2
+				,  -2,   0,   2,   2,   2,   2,   0,  -2
+				,  -2,   0,   2,   3,   3,   2,   0,  -2
+				,  -2,   0,   2,   3,   3,   2,   0,  -2
+				,  -2,   0,   2,   2,   2,   2,   0,  -2
+				,  -2,   0,   0,   0,   0,   0,   0,  -2
+				,  -4,  -2,  -2,  -2,  -2,  -2,  -2,  -4
+			  }
+			, { // King (centralisation; the king supports and stops pawns):
+				  -10,  -6,  -4,  -2,  -2,  -4,  -6, -10
+				,  -6,  -2,   0,   2,   2,   0,  -2,  -6
+				,  -4,   0,   4,   6,   6,   4,   0,  -4
+				,  -2,   2,   6,   8,   8,   6,   2,  -2
+				,  -2,   2,   6,   8,   8,   6,   2,  -2
+				,  -4,   0,   4,   6,   6,   4,   0,  -4
+				,  -6,  -2,   0,   2,   2,   0,  -2,  -6
+				, -10,  -6,  -4,  -2,  -2,  -4,  -6, -10
+			  }
+		};
+	
+	/*
+		Placement bonuses and penalties indexed by figure key and square ('x + 8 * y'); Black's
+		are White's mirrored. The placement values of all figures are summed up incrementally by
+		'Board' (cf. 'Board.placement_middlegame' and 'Board.placement_endgame').
+	*/
+	protected static final int[][] placement_table_middlegame =
+		new int[13][64];
+	protected static final int[][] placement_table_endgame =
+		new int[13][64];
+	
+	static
+	{
+		for (var key = 1; key <= 6; key++)
+		{
+			for (var x = 0; x <= 7; x++)
+			{
+				for (var y = 0; y <= 7; y++)
+				{
+					placement_table_middlegame[key][x + 8 * y] =
+						placement_bonus_middlegame[key - 1][x + 8 * (7 - y)];
+					placement_table_middlegame[key + 6][x + 8 * y] =
+						placement_bonus_middlegame[key - 1][x + 8 * y];
+					placement_table_endgame[key][x + 8 * y] =
+						placement_bonus_endgame[key - 1][x + 8 * (7 - y)];
+					placement_table_endgame[key + 6][x + 8 * y] =
+						placement_bonus_endgame[key - 1][x + 8 * y];
+				}
+			}
+		}
+	}
+	
+	/*
+		Bitboards of all squares of each file ('files[0]' is the a-file) respectively all squares
+		of the files adjacent to each file:
+	*/
+	private static final long[] files =
+		new long[8];
+	private static final long[] files_adjacent =
+		new long[8];
+	
+	static
+	{
+		for (var x = 0; x <= 7; x++)
+		{
+			files[x] = 0x0101010101010101l << x;
+		}
+		for (var x = 0; x <= 7; x++)
+		{
+			files_adjacent[x] = (x > 0 ? files[x - 1] : 0) | (x < 7 ? files[x + 1] : 0);
+		}
+	}
+	
+	/*
+		Middlegame and endgame mobility bonuses and penalties, indexed by figure key and number
+		of squares the figure can move to:
+	*/
+	protected static final int[][] mobility_table_middlegame =
+		{
+			  { // null (no figure; never accessed):
+				    0,   0,   0,   0,   0,   0,   0,   0,   0,   0,   0
+				,   0,   0,   0,   0,   0,   0,   0,   0,   0,   0
+				,   0,   0,   0,   0,   0,   0,   0,   0
+			  }
+					/* white figures */
+			, { // Pawn (no bonus or penalty):
+				    0,   0,   0,   0,   0,   0,   0,   0,   0,   0,   0
+				,   0,   0,   0,   0,   0,   0,   0,   0,   0,   0
+				,   0,   0,   0,   0,   0,   0,   0,   0
+			  }
+			, { // Rook bonus (6-8: 3 points, 9-11: 8 points, 12-14: 14 points):
+				    0,   0,   0,   0,   0,   0,   3,   3,   3,   8,   8
+				,   8,  14,  14,  14,   0,   0,   0,   0,   0,   0
+				,   0,   0,   0,   0,   0,   0,   0,   0
+			  }
+			, { // Knight bonus (2 points for each field the knight can be moved to):
+				    0,   2,   4,   6,   8,  10,  12,  14,  16,   0,   0
+				,   0,   0,   0,   0,   0,   0,   0,   0,   0,   0
+				,   0,   0,   0,   0,   0,   0,   0,   0
+			  }
+			, { // Bishop penalty (0-3: -10 points, 4-6: -6 points, 7-9: -2 points):
+				  -10, -10, -10, -10,  -6,  -6,  -6,  -2,  -2,  -2,   0
+				,   0,   0,   0,   0,   0,   0,   0,   0,   0,   0
+				,   0,   0,   0,   0,   0,   0,   0,   0
+			  }
+			, { // Queen penalty (0-7: -15 points, 8-13: -6 points):
+				  -15, -15, -15, -15, -15, -15, -15, -15,  -6,  -6,  -6
+				,  -6,  -6,  -6,   0,   0,   0,   0,   0,   0,   0
+				,   0,   0,   0,   0,   0,   0,   0,   0
+			  }
+			, { // King (no mobility bonus or penalty):
+				    0,   0,   0,   0,   0,   0,   0,   0,   0,   0,   0
+				,   0,   0,   0,   0,   0,   0,   0,   0,   0,   0
+				,   0,   0,   0,   0,   0,   0,   0,   0
+			  }
+					/* black figures */
+			, { // Pawn:
+				    0,   0,   0,   0,   0,   0,   0,   0,   0,   0,   0
+				,   0,   0,   0,   0,   0,   0,   0,   0,   0,   0
+				,   0,   0,   0,   0,   0,   0,   0,   0
+			  }
+			, { // Rook:
+				    0,   0,   0,   0,   0,   0,   3,   3,   3,   8,   8
+				,   8,  14,  14,  14,   0,   0,   0,   0,   0,   0
+				,   0,   0,   0,   0,   0,   0,   0,   0
+			  }
+			, { // Knight:
+				    0,   2,   4,   6,   8,  10,  12,  14,  16,   0,   0
+				,   0,   0,   0,   0,   0,   0,   0,   0,   0,   0
+				,   0,   0,   0,   0,   0,   0,   0,   0
+			  }
+			, { // Bishop:
+				  -10, -10, -10, -10,  -6,  -6,  -6,  -2,  -2,  -2,   0
+				,   0,   0,   0,   0,   0,   0,   0,   0,   0,   0
+				,   0,   0,   0,   0,   0,   0,   0,   0
+			  }
+			, { // Queen:
+				  -15, -15, -15, -15, -15, -15, -15, -15,  -6,  -6,  -6
+				,  -6,  -6,  -6,   0,   0,   0,   0,   0,   0,   0
+				,   0,   0,   0,   0,   0,   0,   0,   0
+			  }
+			, { // King:
+				    0,   0,   0,   0,   0,   0,   0,   0,   0,   0,   0
+				,   0,   0,   0,   0,   0,   0,   0,   0,   0,   0
+				,   0,   0,   0,   0,   0,   0,   0,   0
+			  }
+		};
+	
+	protected static final int[][] mobility_table_endgame =
+		{
+			  { // null (no figure; never accessed):
+				    0,   0,   0,   0,   0,   0,   0,   0,   0,   0,   0
+				,   0,   0,   0,   0,   0,   0,   0,   0,   0,   0
+				,   0,   0,   0,   0,   0,   0,   0,   0
+			  }
+					/* white figures */
+			, { // Pawn (no bonus or penalty):
+				    0,   0,   0,   0,   0,   0,   0,   0,   0,   0,   0
+				,   0,   0,   0,   0,   0,   0,   0,   0,   0,   0
+				,   0,   0,   0,   0,   0,   0,   0,   0
+			  }
+			, { // Rook bonus (6-8: 4 points, 9-11: 10 points, 12-14: 14 points):
+				    0,   0,   0,   0,   0,   0,   4,   4,   4,  10,  10
+				,  10,  14,  14,  14,   0,   0,   0,   0,   0,   0
+				,   0,   0,   0,   0,   0,   0,   0,   0
+			  }
+			, { // Knight bonus (2 points for each field the knight can be moved to):
+				    0,   2,   4,   6,   8,  10,  12,  14,  16,   0,   0
+				,   0,   0,   0,   0,   0,   0,   0,   0,   0,   0
+				,   0,   0,   0,   0,   0,   0,   0,   0
+			  }
+			, { // Bishop penalty (0-3: -8 points, 4-6: -4 points, 7-9: -1 point):
+				   -8,  -8,  -8,  -8,  -4,  -4,  -4,  -1,  -1,  -1,   0
+				,   0,   0,   0,   0,   0,   0,   0,   0,   0,   0
+				,   0,   0,   0,   0,   0,   0,   0,   0
+			  }
+			, { // Queen penalty (0-7: -10 points, 8-13: -4 points):
+				  -10, -10, -10, -10, -10, -10, -10, -10,  -4,  -4,  -4
+				,  -4,  -4,  -4,   0,   0,   0,   0,   0,   0,   0
+				,   0,   0,   0,   0,   0,   0,   0,   0
+			  }
+			, { // King (no mobility bonus or penalty):
+				    0,   0,   0,   0,   0,   0,   0,   0,   0,   0,   0
+				,   0,   0,   0,   0,   0,   0,   0,   0,   0,   0
+				,   0,   0,   0,   0,   0,   0,   0,   0
+			  }
+					/* black figures */
+			, { // Pawn:
+				    0,   0,   0,   0,   0,   0,   0,   0,   0,   0,   0
+				,   0,   0,   0,   0,   0,   0,   0,   0,   0,   0
+				,   0,   0,   0,   0,   0,   0,   0,   0
+			  }
+			, { // Rook:
+				    0,   0,   0,   0,   0,   0,   4,   4,   4,  10,  10
+				,  10,  14,  14,  14,   0,   0,   0,   0,   0,   0
+				,   0,   0,   0,   0,   0,   0,   0,   0
+			  }
+			, { // Knight:
+				    0,   2,   4,   6,   8,  10,  12,  14,  16,   0,   0
+				,   0,   0,   0,   0,   0,   0,   0,   0,   0,   0
+				,   0,   0,   0,   0,   0,   0,   0,   0
+			  }
+			, { // Bishop:
+				   -8,  -8,  -8,  -8,  -4,  -4,  -4,  -1,  -1,  -1,   0
+				,   0,   0,   0,   0,   0,   0,   0,   0,   0,   0
+				,   0,   0,   0,   0,   0,   0,   0,   0
+			  }
+			, { // Queen:
+				  -10, -10, -10, -10, -10, -10, -10, -10,  -4,  -4,  -4
+				,  -4,  -4,  -4,   0,   0,   0,   0,   0,   0,   0
+				,   0,   0,   0,   0,   0,   0,   0,   0
+			  }
+			, { // King:
+				    0,   0,   0,   0,   0,   0,   0,   0,   0,   0,   0
+				,   0,   0,   0,   0,   0,   0,   0,   0,   0,   0
+				,   0,   0,   0,   0,   0,   0,   0,   0
+			  }
+		};
+	
+	/*
+		Development bonus and penalties: castling done, castling lost on one side, castling lost
+		on both sides, unmoved d- or e-pawn and unmoved c- or f-pawn.
+	*/
+	protected static final int[] development_table =
+		{10, -5, -12, -4, -3};
+	
+	/*
+		Development score of the given player (castling and unmoved central pawns).
+	*/
+	protected static int development(final Board board, final boolean player)
+	{
+		return development(board, player, development_table);
+	}
+	
+	/*
+		Development score of the given player for the given bonus and penalties (cf.
+		'development_table').
+	*/
+	protected static int development(
+		  final Board board
+		, final boolean player
+		, final int[] development_table)
+	{
+		// Castling bonus and penalties:
+		var development = 0;
+		if (board.castling_done(player))
+		{
+			development = development_table[0];
+		}
+		else
+		{
+			final var right =
+				board.castling_allowed(false, player);
+			development = board.castling_allowed(true, player)
+				? (right ? 0 : development_table[1])
+				: (right ? development_table[1] : development_table[2]);
+		}
+		
+		// Unmoved pawn penalties:
+		final var base_rank =
+			player ? 1 : 6;
+		var f =
+			board.figure(3, base_rank);
+		if (f != null && f.is_pawn() && f.owner == player)
+		{
+			development += development_table[3];
+		}
+		f = board.figure(4, base_rank);
+		if (f != null && f.is_pawn() && f.owner == player)
+		{
+			development += development_table[3];
+		}
+		f = board.figure(2, base_rank);
+		if (f != null && f.is_pawn() && f.owner == player)
+		{
+			development += development_table[4];
+		}
+		f = board.figure(5, base_rank);
+		if (f != null && f.is_pawn() && f.owner == player)
+		{
+			development += development_table[4];
+		}
+		return development;
+	}
+	
+	/*
+		Pawn formation score of the given player's pawns considering the given opponent pawns.
+	*/
+	protected static int pawn_formation(final long pawns_player, final long pawns_opponent)
+	{
+		var pawn_formation = 0;
+		for (var x = 0; x <= 7; x++)
+		{
+			final var pawns =
+				Long.bitCount(pawns_player & files[x]);
+			if (pawns == 0)
+			{
+				continue;
+			}
+			pawn_formation -= (pawns - 1) * 2; // Doubled pawns penalty.
+			if ((pawns_player & files_adjacent[x]) == 0)
+			{
+				pawn_formation -= 7; // Isolated pawn penalty.
+			}
+			if ((pawns_opponent & files_adjacent[x]) == 0)
+			{
+				pawn_formation += 12; // Breached pawn bonus.
+			}
+		}
+		return pawn_formation;
+	}
+	
+	/*
+		Interpolation of the given middlegame and endgame scores according to the given phase.
+	*/
+	protected static int tapered(final int middlegame, final int endgame, final int phase)
+	{
+		return (middlegame * phase + endgame * (phase_max - phase)) / phase_max;
+	}
+	
+	/*
+		Mobility score of the given player's figures in the given phase.
+	*/
+	private static int mobility(final Board board, final boolean player, final int phase)
+	{
+		final var own =
+			board.occupied(player);
+		final var occupied =
+			own | board.occupied(!player);
+		var mobility_middlegame = 0;
+		var mobility_endgame = 0;
+		for (var figures = board.squares(Figure.rook(player));
+			figures != 0;
+			figures &= figures - 1)
+		{
+			final var attacked =
+				Bitboard.rook_attacks(Long.numberOfTrailingZeros(figures), occupied) & ~own;
+			final var key =
+				Figure.rook(player).key;
+			mobility_middlegame += mobility_table_middlegame[key][Long.bitCount(attacked)];
+			mobility_endgame += mobility_table_endgame[key][Long.bitCount(attacked)];
+		}
+		for (var figures = board.squares(Figure.knight(player));
+			figures != 0;
+			figures &= figures - 1)
+		{
+			final var attacked =
+				Bitboard.knight_attacks(Long.numberOfTrailingZeros(figures)) & ~own;
+			final var key =
+				Figure.knight(player).key;
+			mobility_middlegame += mobility_table_middlegame[key][Long.bitCount(attacked)];
+			mobility_endgame += mobility_table_endgame[key][Long.bitCount(attacked)];
+		}
+		for (var figures = board.squares(Figure.bishop(player));
+			figures != 0;
+			figures &= figures - 1)
+		{
+			final var attacked =
+				Bitboard.bishop_attacks(Long.numberOfTrailingZeros(figures), occupied) & ~own;
+			final var key =
+				Figure.bishop(player).key;
+			mobility_middlegame += mobility_table_middlegame[key][Long.bitCount(attacked)];
+			mobility_endgame += mobility_table_endgame[key][Long.bitCount(attacked)];
+		}
+		for (var figures = board.squares(Figure.queen(player));
+			figures != 0;
+			figures &= figures - 1)
+		{
+			final var attacked =
+				Bitboard.queen_attacks(Long.numberOfTrailingZeros(figures), occupied) & ~own;
+			final var key =
+				Figure.queen(player).key;
+			mobility_middlegame += mobility_table_middlegame[key][Long.bitCount(attacked)];
+			mobility_endgame += mobility_table_endgame[key][Long.bitCount(attacked)];
+		}
+		return tapered(mobility_middlegame, mobility_endgame, phase);
+	}
+	
+	/*
+		Maximal mobility score difference of usual positions, i.e., without promoted figures
+		(2 * 14 rook and 2 * 16 knight bonus versus 2 * -10 bishop and -15 queen penalty in the
+		middlegame; the range of the endgame is smaller).
+	*/
+	private static final int lazy_margin = 100;
+	
+	/*
+		Staged evaluation: if the cheap scoring criteria already result in a score less than
+		'alpha' or greater than 'beta' by more than the mobility can change, the mobility is not
+		evaluated and the score of just the cheap criteria is returned; it is outside the window
+		as the exact score would be. Only exact scores are cached.
+	*/
+	@Override public int score(
+		  final Board board
+		, final boolean player
+		, final int alpha
+		, final int beta)
+	{
+		final var cache_key =
+			EvaluationCache.key(
+				  board
+				, player
+				, evaluation_cache_salt
+					^ (board.castling_done(true) ? castling_done_salt_w : 0)
+					^ (board.castling_done(false) ? castling_done_salt_b : 0));
+		final var cached_score =
+			evaluation_cache.probe(cache_key, Integer.MIN_VALUE);
+		if (cached_score != Integer.MIN_VALUE)
+		{
+			return cached_score;
+		}
+		
+		// Game phase, material and placement evaluation (incrementally computed by 'Board'; the
+		//   phase can exceed its maximum due to promotions):
+		final var phase =
+			Math.min(board.phase(), phase_max);
+		final var material =
+			board.material(player) - board.material(!player);
+		final var placement =
+			tapered(
+				  board.placement_middlegame(player) - board.placement_middlegame(!player)
+				, board.placement_endgame(player) - board.placement_endgame(!player)
+				, phase);
+		
+		// Pawn formation evaluation (cached for both players by pawn hash):
+		final var pawn_hash =
+			board.pawn_hash();
+		var pawn_formations =
+			pawn_hash_table.probe(pawn_hash, Long.MIN_VALUE);
+		if (pawn_formations == Long.MIN_VALUE)
+		{
+			final var pawns_white =
+				board.squares(Figure.pawn(true));
+			final var pawns_black =
+				board.squares(Figure.pawn(false));
+			pawn_formations =
+				((long) pawn_formation(pawns_white, pawns_black) << 32)
+				| (pawn_formation(pawns_black, pawns_white) & 0xFFFFFFFFl);
+			pawn_hash_table.store(pawn_hash, pawn_formations);
+		}
+		final var pawn_formation =
+			player
+				? (int) (pawn_formations >> 32)
+				: (int) pawn_formations;
+		
+		// Development evaluation:
+		final var development =
+			development(board, player);
+		
+		// Weight and sum up cheap scoring criteria; done if far outside the window:
+		final var score =
+			weight_material * material
+			+ weight_placement * placement
+			+ weight_pawn_formation * pawn_formation
+			+ weight_development * development
+			+ (noise
+				? random_shifts[(int) Long.remainderUnsigned(
+					  Board.hash_mix(board.hash() ^ noise_seed)
+					, random_shifts.length)]
+				: 0);
+		if (score + lazy_margin <= alpha || score - lazy_margin >= beta)
+		{
+			return score;
+		}
+		
+		// Mobility evaluation (squares attacked by rooks, knights, bishops and queens that are
+		//   not occupied by own figures; pawns and kings have no mobility bonus or penalty):
+		final var mobility =
+			mobility(board, player, phase) - mobility(board, !player, phase);
+		
+		evaluation_cache.store(cache_key, score + mobility);
+		return score + mobility;
+	}
+}
@@ -0,0 +1,601 @@
+/*
+	This program and the accompanying materials are made available under the terms of the MIT
+	license (X11 license) which accompanies this distribution.
+	
+	Author: Christoff Bürger
+*/
+
+package pmchess.logic;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+import java.io.*;
+
+import java.nio.charset.*;
+import java.nio.file.*;
+
+/*
+	Headless self-play matches between two configurations of the computer player, e.g., to
+	verify that changes of the evaluation or search improve its play.
+	
+	Games are played in parallel, each on its own board by a single thread, starting from the
+	positions of an opening suite: each opening is played twice, with swapped colours. Games
+	end by 'Board.status()'; the computer resigns if it cannot find any move not losing (like
+	in the graphical user interface) and loses if it exceeds its time. Games longer than
+	'plies_max' are adjudicated as draws.
+	
+	After each game, the Elo difference of the first to the second configuration is estimated
+	from the results with a 95% confidence interval, and a sequential probability ratio test
+	(SPRT) decides whether the difference is at least 'elo1' (H1) or at most 'elo0' (H0), with
+	false positive and negative rates of 'alpha'. The match stops early once the test decided.
+	The log-likelihood ratio of the test is approximated by the normal distribution of the game
+	results (trinomial, i.e., wins, draws and losses).
+*/
+public final class Match
+{
+	private static final int plies_max = 400;
+	private static final int depth_max = 64; // Search depth limit of timed moves.
+	private static final long steps_per_slice = 16384; // Search steps between time checks.
+	private static final int moves_to_go = 30; // Moves assumed left when budgeting time.
+	private static final double alpha = 0.05;
+	private static final int report_interval = 10; // Games between progress reports.
+	private static final double score_min = 0.001; // Minimal score reported in Elo (-1200).
+	
+	private Match() // No instances.
+	{
+	}
+	
+	/*
+		Configuration of a computer player, given as 'evaluator:limit' followed by any search
+		options, each preceded by a comma. The evaluator is 'handcrafted'; the limit is either a
+		fixed search depth 'dN' or a time control 'B+I' of B seconds for the whole game plus I
+		seconds of increment per move. Search options are
+			(1) 'book=F' to play the moves of opening book file F without search (cf.
+			    'OpeningBook'),
+			(2) 'tablebases=D' to play and search with the endgame tablebases of directory D
+			    (cf. 'Tablebase') and
+			(3) 'noise' to evaluate with noise, like the computer player of the graphical user
+			    interface (cf. 'HandcraftedEvaluator').
+		E.g., 'handcrafted:d5', 'handcrafted:10+0.1' or
+		'handcrafted:10+0.1,book=opening-book.data,tablebases=tablebases,noise'.
+	*/
+	public static final class Configuration
+	{
+		private final String description;
+		private final int depth; // 0 for time controls.
+		private final long time; // Nanoseconds per game.
+		private final long increment; // Nanoseconds per move.
+		private OpeningBook opening_book = null;
+		private Tablebase tablebase = null;
+		private boolean noise = false;
+		
+		private Configuration(
+			  final String description
+			, final int depth
+			, final long time
+			, final long increment)
+		{
+			this.description = description;
+			this.depth = depth;
+			this.time = time;
+			this.increment = increment;
+		}
+		
+		/*
+			Configuration of the given description. Throws an 'IllegalArgumentException' if
+			the description is invalid and an 'IOException' if its opening book or tablebases
+			cannot be read.
+		*/
+		public static Configuration parse(final String description) throws IOException
+		{
+			final var fields =
+				description.split(",", -1);
+			final var configuration =
+				parse_limit(description, fields[0]);
+			for (var i = 1; i < fields.length; i++)
+			{
+				final var option =
+					fields[i];
+				if (option.startsWith("book=") && configuration.opening_book == null)
+				{
+					configuration.opening_book =
+						OpeningBook.open(Path.of(option.substring("book=".length())));
+				}
+				else if (option.startsWith("tablebases=") && configuration.tablebase == null)
+				{
+					configuration.tablebase =
+						Tablebase.open(Path.of(option.substring("tablebases=".length())));
+				}
+				else if (option.equals("noise") && !configuration.noise)
+				{
+					configuration.noise = true;
+				}
+				else
+				{
+					throw new IllegalArgumentException("ERROR: Invalid option " + option + ".");
+				}
+			}
+			return configuration;
+		}
+		
+		private static Configuration parse_limit(
+			  final String description
+			, final String evaluator_and_limit)
+		{
+			final var separator =
+				evaluator_and_limit.indexOf(':');
+			if (separator <= 0)
+			{
+				throw new IllegalArgumentException(
+					"ERROR: Invalid configuration " + description + ".");
+			}
+			final var evaluator =
+				evaluator_and_limit.substring(0, separator);
+			final var limit =
+				evaluator_and_limit.substring(separator + 1);
+			if (!evaluator.equals("handcrafted"))
+			{
+				throw new IllegalArgumentException("ERROR: Invalid evaluator " + evaluator + ".");
+			}
+			try
+			{
+				if (limit.startsWith("d"))
+				{
+					final var depth =
+						Integer.parseInt(limit.substring(1));
+					if (depth >= 1 && depth <= depth_max)
+					{
+						return new Configuration(description, depth, 0, 0);
+					}
+				}
+				else
+				{
+					final var clock =
+						limit.split("\\+", -1);
+					final var time =
+						(long) (Double.parseDouble(clock[0]) * 1000000000.0);
+					final var increment =
+						clock.length == 2
+							? (long) (Double.parseDouble(clock[1]) * 1000000000.0)
+							: 0;
+					if (clock.length <= 2 && time > 0 && increment >= 0)
+					{
+						return new Configuration(description, 0, time, increment);
+					}
+				}
+			}
+			catch (final NumberFormatException e)
+			{
+			}
+			throw new IllegalArgumentException("ERROR: Invalid limit " + limit + ".");
+		}
+		
+		private Evaluator evaluator()
+		{
+			return noise
+				? new HandcraftedEvaluator()
+				: new HandcraftedEvaluator(false, 0);
+		}
+		
+		/*
+			Move of the opening book or tablebases of the given board's current position or 0 if
+			there is none and the move must be searched.
+		*/
+		private int known_move(final Board board)
+		{
+			final var book_move =
+				opening_book == null ? 0 : opening_book.move(board);
+			return book_move != 0 || tablebase == null ? book_move : tablebase.move(board);
+		}
+		
+		@Override public String toString()
+		{
+			return description;
+		}
+	}
+	
+	/*
+		Play at most the given number of games between the given configurations, starting from
+		the openings of the given suite, with the given number of threads (each playing a game
+		at a time). The suite has a position per line in the format of 'Engine' requests, e.g.,
+		'startpos moves e2e4 e7e5'; empty lines are ignored. The SPRT decides between the given
+		Elo differences 'elo0' (H0) and 'elo1' (H1). Progress and the final results are
+		reported to the given stream. Throws an 'IllegalArgumentException' if the number of
+		games is negative or 'elo0' is not less than 'elo1' and an 'IOException' if the suite
+		cannot be read or is invalid.
+	*/
+	public static void run(
+		  final Configuration a
+		, final Configuration b
+		, final Path suite
+		, final int games
+		, final int threads
+		, final double elo0
+		, final double elo1
+		, final PrintStream log)
+		throws IOException
+	{
+		if (games < 0)
+		{
+			throw new IllegalArgumentException("ERROR: Invalid number of games " + games + ".");
+		}
+		if (!(elo0 < elo1))
+		{
+			throw new IllegalArgumentException(
+				"ERROR: Invalid SPRT bounds " + elo0 + " and " + elo1 + ".");
+		}
+		final var openings =
+			new ArrayList<String>();
+		for (final var line : Files.readAllLines(suite, StandardCharsets.UTF_8))
+		{
+			final var opening =
+				line.trim();
+			if (opening.isEmpty())
+			{
+				continue;
+			}
+			try
+			{
+				final var status =
+					Engine.position(opening).status();
+				if (status != Board.GameStatus.Normal && status != Board.GameStatus.Check)
+				{
+					throw new IllegalArgumentException(
+						"ERROR: Finished opening " + opening + ".");
+				}
+			}
+			catch (final IllegalArgumentException e)
+			{
+				throw new IOException(e.getMessage());
+			}
+			openings.add(opening);
+		}
+		if (openings.isEmpty())
+		{
+			throw new IOException("ERROR: Empty opening suite " + suite + ".");
+		}
+		
+		log.println("Match " + a + " vs. " + b + ": at most " + games + " games of "
+			+ openings.size() + " openings, SPRT of Elo " + elo0 + " vs. " + elo1 + ".");
+		final var results =
+			new Results(games, elo0, elo1, System.nanoTime());
+		final var next_game =
+			new AtomicInteger();
+		final var pool =
+			new ForkJoinPool(Math.max(threads, 1));
+		try
+		{
+			final var workers =
+				new ArrayList<ForkJoinTask<?>>();
+			for (var worker = 0; worker < Math.max(threads, 1); worker++)
+			{
+				workers.add(pool.submit(() ->
+				{
+					for (var game = next_game.getAndIncrement();
+						game < games && !results.decided();
+						game = next_game.getAndIncrement())
+					{
+						final var a_white =
+							game % 2 == 0;
+						final var points_white =
+							play(
+								  Engine.position(openings.get((game / 2) % openings.size()))
+								, a_white ? a : b
+								, a_white ? b : a
+								, results);
+						if (points_white >= 0)
+						{
+							results.add(a_white ? points_white : 2 - points_white, log);
+						}
+					}
+				}));
+			}
+			for (final var worker : workers)
+			{
+				worker.join();
+			}
+		}
+		finally
+		{
+			pool.shutdownNow();
+		}
+		results.report(log);
+		log.println(results.llr() >= results.llr_upper() ? "H1 accepted: Elo >= " + elo1 + "."
+			: results.llr() <= results.llr_lower() ? "H0 accepted: Elo <= " + elo0 + "."
+			: "SPRT undecided.");
+	}
+	
+	/*
+		Play a game from the given board's position; returns the points of White (2 for wins,
+		1 for draws and 0 for losses) or -1 if the game was aborted since the match is decided.
+	*/
+	private static int play(
+		  final Board board
+		, final Configuration white
+		, final Configuration black
+		, final Results results)
+	{
+		final var evaluator_white =
+			white.evaluator();
+		final var evaluator_black =
+			black.evaluator();
+		var time_white =
+			white.time;
+		var time_black =
+			black.time;
+		for (var ply = 0; ply < plies_max; ply++)
+		{
+			if (results.decided())
+			{
+				return -1;
+			}
+			final var player =
+				board.player();
+			switch (board.status())
+			{
+			case Checkmate:
+				return player ? 0 : 2;
+			case Stalemate:
+			case Draw:
+				return 1;
+			default:
+				break;
+			}
+			final var configuration =
+				player ? white : black;
+			final var evaluator =
+				player ? evaluator_white : evaluator_black;
+			final var start =
+				System.nanoTime();
+			final var time =
+				player ? time_white : time_black;
+			var move =
+				configuration.known_move(board);
+			if (move == 0 && configuration.depth > 0)
+			{
+				final var search =
+					new SearchStack(
+						  board.fork()
+						, evaluator
+						, configuration.tablebase
+						, configuration.depth);
+				search.search(Long.MAX_VALUE);
+				move = search.best_move();
+			}
+			else if (move == 0)
+			{
+				move = timed_move(
+					  board
+					, evaluator
+					, configuration.tablebase
+					, Math.min(time / moves_to_go + configuration.increment * 3 / 4, time / 2));
+			}
+			if (configuration.depth == 0)
+			{
+				final var time_left =
+					time - (System.nanoTime() - start);
+				if (time_left < 0)
+				{ // Out of time:
+					return player ? 0 : 2;
+				}
+				if (player)
+				{
+					time_white = time_left + configuration.increment;
+				}
+				else
+				{
+					time_black = time_left + configuration.increment;
+				}
+			}
+			if (move == 0)
+			{ // Resigned:
+				return player ? 0 : 2;
+			}
+			board.execute(move);
+		}
+		return 1;
+	}
+	
+	/*
+		Move selected by searching increasing depths within the given time budget in
+		nanoseconds, with the given tablebase (if not 'null'); the move of the deepest finished
+		search or 0 if it finds all moves losing.
+	*/
+	private static int timed_move(
+		  final Board board
+		, final Evaluator evaluator
+		, final Tablebase tablebase
+		, final long budget)
+	{
+		final var start =
+			System.nanoTime();
+		var best_move = 0;
+		for (var depth = 1; depth <= depth_max; depth++)
+		{
+			// A deeper search is unlikely to finish in the last half of the budget:
+			if (depth > 1 && System.nanoTime() - start > budget / 2)
+			{
+				break;
+			}
+			final var search =
+				new SearchStack(board.fork(), evaluator, tablebase, depth);
+			while (!search.search(steps_per_slice))
+			{
+				if (depth > 1 && System.nanoTime() - start > budget)
+				{
+					return best_move;
+				}
+			}
+			best_move = search.best_move();
+			if (best_move == 0)
+			{
+				break;
+			}
+		}
+		return best_move;
+	}
+	
+	/*
+		Results of a match, from the perspective of its first configuration.
+	*/
+	private static final class Results
+	{
+		private final int games_max;
+		private final double elo0;
+		private final double elo1;
+		private final long start_time;
+		
+		private int wins = 0;
+		private int draws = 0;
+		private int losses = 0;
+		private volatile boolean decided = false;
+		
+		private Results(
+			  final int games_max
+			, final double elo0
+			, final double elo1
+			, final long start_time)
+		{
+			this.games_max = games_max;
+			this.elo0 = elo0;
+			this.elo1 = elo1;
+			this.start_time = start_time;
+		}
+		
+		private boolean decided()
+		{
+			return decided;
+		}
+		
+		private synchronized void add(final int points, final PrintStream log)
+		{
+			if (decided)
+			{
+				return;
+			}
+			switch (points)
+			{
+			case 2 -> wins++;
+			case 1 -> draws++;
+			default -> losses++;
+			}
+			decided = llr() >= llr_upper() || llr() <= llr_lower();
+			final var games =
+				wins + draws + losses;
+			if (games % report_interval == 0 && games < games_max && !decided)
+			{
+				report(log);
+			}
+		}
+		
+		private synchronized void report(final PrintStream log)
+		{
+			final var games =
+				wins + draws + losses;
+			if (games == 0)
+			{
+				log.println("Games 0, no results.");
+				return;
+			}
+			final var score =
+				score();
+			final var error =
+				1.96 * Math.sqrt(variance() / games);
+			final var hours =
+				(System.nanoTime() - start_time) / 3600000000000.0;
+			log.println(String.format(
+				  Locale.ROOT
+				, "Games %d (+%d =%d -%d), score %.1f%%, Elo %.1f [%.1f, %.1f],"
+					+ " LLR %.2f [%.2f, %.2f], %.0f games/hour"
+				, games
+				, wins
+				, draws
+				, losses
+				, 100.0 * score
+				, elo(score)
+				, elo(score - error)
+				, elo(score + error)
+				, llr()
+				, llr_lower()
+				, llr_upper()
+				, games / hours));
+		}
+		
+		/*
+			Mean points per game (1 for wins, 0.5 for draws and 0 for losses).
+		*/
+		private double score()
+		{
+			return (wins + 0.5 * draws) / (wins + draws + losses);
+		}
+		
+		/*
+			Variance of the points per game, estimated with pseudo-counts of half a win and half
+			a loss: one-sided results (only wins, only draws or only losses) have no variance
+			otherwise, such that the SPRT would never decide them.
+		*/
+		private double variance()
+		{
+			final var wins =
+				this.wins + 0.5;
+			final var losses =
+				this.losses + 0.5;
+			final var games =
+				wins + draws + losses;
+			final var score =
+				(wins + 0.5 * draws) / games;
+			return (wins * (1.0 - score) * (1.0 - score)
+				+ draws * (0.5 - score) * (0.5 - score)
+				+ losses * score * score)
+				/ games;
+		}
+		
+		/*
+			Log-likelihood ratio of H1 (Elo difference 'elo1') to H0 (Elo difference 'elo0'),
+			approximating the game results by a normal distribution.
+		*/
+		private synchronized double llr()
+		{
+			final var games =
+				wins + draws + losses;
+			if (games == 0)
+			{
+				return 0.0;
+			}
+			final var score0 =
+				score(elo0);
+			final var score1 =
+				score(elo1);
+			return games * (score1 - score0) * (2.0 * score() - score0 - score1)
+				/ (2.0 * variance());
+		}
+		
+		private double llr_lower()
+		{
+			return Math.log(alpha / (1.0 - alpha));
+		}
+		
+		private double llr_upper()
+		{
+			return Math.log((1.0 - alpha) / alpha);
+		}
+		
+		/*
+			Expected score of the given Elo difference and vice versa (for scores clamped to
+			['score_min', 1 - 'score_min']).
+		*/
+		private static double score(final double elo)
+		{
+			return 1.0 / (1.0 + Math.pow(10.0, -elo / 400.0));
+		}
+		
+		private static double elo(final double score)
+		{
+			final var clamped =
+				Math.min(Math.max(score, score_min), 1.0 - score_min);
+			return 400.0 * Math.log10(clamped / (1.0 - clamped));
+		}
+	}
+}
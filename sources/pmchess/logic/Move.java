@@ -191,4 +191,28 @@ public final class Move
 	{
 		return (move & 0x20000000) != 0;
 	}
+	
+	/*
+		Move in coordinate notation (origin and destination square, followed by the figure placed
+		in case of pawn promotions), e.g., 'e2e4' or 'e7e8q'. Draw claims are not denoted;
+		moveless draw claims are 'draw'.
+	*/
+	public static String coordinate_notation(final int move)
+	{
+		if (is_moveless_draw_claim(move))
+		{
+			return "draw";
+		}
+		final var notation =
+			new StringBuilder();
+		notation.append((char) ('a' + x(move)));
+		notation.append((char) ('1' + y(move)));
+		notation.append((char) ('a' + X(move)));
+		notation.append((char) ('1' + Y(move)));
+		if (figure_placed(move) != figure_moved(move))
+		{ // Pawn promotion:
+			notation.append("prnbqk".charAt((figure_placed(move).key - 1) % 6));
+		}
+		return notation.toString();
+	}
 }
@@ -0,0 +1,358 @@
+/*
+	This program and the accompanying materials are made available under the terms of the MIT
+	license (X11 license) which accompanies this distribution.
+	
+	Author: Christoff Bürger
+*/
+
+package pmchess.logic;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.*;
+
+import java.io.*;
+
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.file.*;
+
+/*
+	Opening book of moves known to be good in early positions, such that searches can be
+	skipped for them (cf. 'Search.set_opening_book').
+	
+	The book is a file of 16-byte entries sorted by position, in the layout of Polyglot books:
+	the Zobrist hash of a position (long, cf. 'Board.hash'), a move (unsigned short), its
+	weight (unsigned short) and the number of games the move was played in (int). Moves are
+	encoded as in Polyglot books (destination file in bits 0-2, destination rank in bits 3-5,
+	origin file in bits 6-8, origin rank in bits 9-11 and promotion in bits 12-14, 1 for
+	knights to 4 for queens), except castlings, which are king moves by two squares. Since the
+	hashes are the ones of 'Board', books are NOT compatible with Polyglot books.
+	
+	Books are memory-mapped; moves are found by binary search, without loading the book.
+*/
+public final class OpeningBook
+{
+	private static final int weight_max = 0xFFFF;
+	
+	private final MappedByteBuffer entries;
+	private final int size; // Number of entries.
+	
+	private OpeningBook(final MappedByteBuffer entries)
+	{
+		this.entries = entries;
+		this.size = entries.capacity() / 16;
+	}
+	
+	/*
+		Open the given book. Throws an 'IOException' if the book cannot be read or is invalid.
+	*/
+	public static OpeningBook open(final Path book) throws IOException
+	{
+		try (final var channel = FileChannel.open(book, StandardOpenOption.READ))
+		{
+			if (channel.size() % 16 != 0 || channel.size() > Integer.MAX_VALUE)
+			{
+				throw new IOException("ERROR: Invalid opening book " + book + ".");
+			}
+			return new OpeningBook(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+		}
+	}
+	
+	/*
+		Book move of the given board's current position or 0 if the position is not in the book.
+		If the book has several moves for the position, one is selected randomly, with the
+		probability of each move proportional to its weight.
+	*/
+	public int move(final Board board)
+	{
+		final var hash =
+			board.hash();
+		var low = 0;
+		var high = size;
+		while (low < high)
+		{
+			final var middle =
+				(low + high) >>> 1;
+			if (Long.compareUnsigned(entries.getLong(16 * middle), hash) < 0)
+			{
+				low = middle + 1;
+			}
+			else
+			{
+				high = middle;
+			}
+		}
+		
+		// Weighted random selection among the legal moves of the position's entries:
+		var total_weight = 0;
+		var selected = 0;
+		for (var entry = low; entry < size && entries.getLong(16 * entry) == hash; entry++)
+		{
+			final var weight =
+				Short.toUnsignedInt(entries.getShort(16 * entry + 10));
+			final var move =
+				weight == 0 ? 0 : decode(board, entries.getShort(16 * entry + 8));
+			if (move == 0)
+			{
+				continue;
+			}
+			total_weight += weight;
+			if (ThreadLocalRandom.current().nextInt(total_weight) < weight)
+			{
+				selected = move;
+			}
+		}
+		return selected;
+	}
+	
+	private static int encode(final int move)
+	{
+		final var figure_placed =
+			Move.figure_placed(move);
+		final var promotion =
+			figure_placed == Move.figure_moved(move) ? 0
+			: figure_placed.is_knight() ? 1
+			: figure_placed.is_bishop() ? 2
+			: figure_placed.is_rook() ? 3
+			: 4;
+		return Move.X(move)
+			| (Move.Y(move) << 3)
+			| (Move.x(move) << 6)
+			| (Move.y(move) << 9)
+			| (promotion << 12);
+	}
+	
+	/*
+		Legal move of the given board's current position of the given encoded move or 0 if it
+		is not legal.
+	*/
+	private static int decode(final Board board, final short encoded)
+	{
+		final var possible =
+			board.moves_possible();
+		for (var i = possible; i < possible + board.moves_possible_count(); i++)
+		{
+			final var move =
+				board.moves_possible(i);
+			if (encode(move) == Short.toUnsignedInt(encoded) && board.execute(move))
+			{
+				board.undo();
+				return move;
+			}
+		}
+		return 0;
+	}
+	
+	/*
+		Build a book of the moves played in the first given number of plies of the games of the
+		given PGN file (read with the given number of threads, cf. 'PGN.read'), replacing any
+		existing book. Moves played in less than the given minimum number of games are left
+		out. As for Polyglot books, the weight of a move is two points per win and one per draw
+		for the player moving; moves without any points (i.e., just lost) are left out. Games
+		starting from a 'FEN' tag are skipped, invalid games as well but reported to the given
+		consumer. Returns the number of entries of the book.
+		
+		The moves played are collected like the postings of position indexes, such that books
+		of any size are built with bounded memory and without sharing state between threads:
+		each reading thread writes sorted runs of its moves (cf. 'PositionIndex.write_run'),
+		which are finally merged into the book (cf. 'PositionIndex.merge').
+	*/
+	public static int build(
+		  final Path pgn
+		, final Path book
+		, final int plies
+		, final int games_min
+		, final int threads
+		, final Consumer<String> invalid)
+		throws IOException
+	{
+		final var directory =
+			book.toAbsolutePath().getParent();
+		final var runs =
+			Collections.synchronizedList(new ArrayList<Path>());
+		final var collectors =
+			Collections.synchronizedList(new ArrayList<Collector>());
+		final var thread_collectors =
+			ThreadLocal.withInitial(() ->
+			{
+				final var collector =
+					new Collector();
+				collectors.add(collector);
+				return collector;
+			});
+		try
+		{
+			try
+			{
+				PGN.read(pgn, threads, (final PGN.Game game) ->
+				{
+					try
+					{
+						thread_collectors.get().add(game, plies, directory, runs);
+					}
+					catch (final IOException exception)
+					{
+						throw new UncheckedIOException(exception);
+					}
+				}, invalid);
+			}
+			catch (final UncheckedIOException exception)
+			{
+				throw exception.getCause();
+			}
+			for (final var collector : collectors)
+			{
+				collector.write_run(directory, runs);
+			}
+			
+			// Entries sorted by hash (unsigned, as for Polyglot books) and weight (descending):
+			try (final var output = new DataOutputStream(new BufferedOutputStream(
+				Files.newOutputStream(book), 65536)))
+			{
+				final var writer =
+					new EntryWriter(output, games_min);
+				PositionIndex.merge(runs, writer::add);
+				writer.write_position();
+				return writer.entries;
+			}
+		}
+		finally
+		{
+			for (final var run : runs)
+			{
+				Files.deleteIfExists(run);
+			}
+		}
+	}
+	
+	/*
+		Collector of the moves of the games read by a thread: postings of the hash of each
+		position (with flipped sign bit, such that signed order is the unsigned order of books)
+		and the encoded move played in it with the points of the player moving ('move << 2 |
+		points').
+	*/
+	private static final class Collector
+	{
+		private final Board board =
+			new Board();
+		private final long[] postings =
+			new long[2 * PositionIndex.run_postings];
+		private int count = 0;
+		
+		private void add(
+			  final PGN.Game game
+			, final int plies
+			, final Path directory
+			, final List<Path> runs)
+			throws IOException
+		{
+			final var points_white =
+				switch (game.result())
+				{
+				case "1-0" -> 2;
+				case "1/2-1/2" -> 1;
+				case "0-1" -> 0;
+				default -> -1;
+				};
+			if (points_white == -1 || game.tags().containsKey("FEN"))
+			{
+				return;
+			}
+			while (board.undo() != 0)
+			{
+			}
+			final var moves =
+				game.moves();
+			for (var ply = 0; ply < Math.min(plies, moves.length); ply++)
+			{
+				if (count == PositionIndex.run_postings)
+				{
+					write_run(directory, runs);
+				}
+				final var points =
+					board.player() ? points_white : 2 - points_white;
+				postings[2 * count] = board.hash() ^ Long.MIN_VALUE;
+				postings[2 * count + 1] = (long) encode(moves[ply]) << 2 | points;
+				count++;
+				board.execute(moves[ply]);
+			}
+		}
+		
+		private void write_run(final Path directory, final List<Path> runs) throws IOException
+		{
+			if (count > 0)
+			{
+				runs.add(PositionIndex.write_run(postings, count, directory));
+				count = 0;
+			}
+		}
+	}
+	
+	/*
+		Writer of the entries of a book, summing up the points and games of the moves of the
+		collected postings passed in order.
+	*/
+	private static final class EntryWriter
+	{
+		private final DataOutputStream output;
+		private final int games_min;
+		private int entries = 0;
+		
+		private long hash = 0; // Position of the moves summed up.
+		private final List<long[]> moves = // Move, points and games of each move of 'hash'.
+			new ArrayList<>();
+		
+		private EntryWriter(final DataOutputStream output, final int games_min)
+		{
+			this.output = output;
+			this.games_min = games_min;
+		}
+		
+		private void add(final long flipped_hash, final long value) throws IOException
+		{
+			final var hash =
+				flipped_hash ^ Long.MIN_VALUE;
+			final var move =
+				value >>> 2;
+			if (hash != this.hash)
+			{
+				write_position();
+				this.hash = hash;
+			}
+			if (moves.isEmpty() || moves.get(moves.size() - 1)[0] != move)
+			{
+				moves.add(new long[]{move, 0, 0});
+			}
+			final var statistics =
+				moves.get(moves.size() - 1);
+			statistics[1] += value & 0x3;
+			statistics[2]++;
+		}
+		
+		/*
+			Write the entries of the moves summed up so far, by weight (descending).
+		*/
+		private void write_position() throws IOException
+		{
+			moves.sort((final long[] a, final long[] b) -> Long.compare(b[1], a[1]));
+			for (final var move : moves)
+			{
+				final var points =
+					move[1];
+				final var games =
+					move[2];
+				if (games < games_min || points == 0)
+				{
+					continue;
+				}
+				output.writeLong(hash);
+				output.writeShort((int) move[0]);
+				output.writeShort((int) Math.min(points, weight_max));
+				output.writeInt((int) Math.min(games, Integer.MAX_VALUE));
+				entries++;
+			}
+			moves.clear();
+		}
+	}
+}
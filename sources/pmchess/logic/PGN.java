@@ -0,0 +1,926 @@
+/*
+	This program and the accompanying materials are made available under the terms of the MIT
+	license (X11 license) which accompanies this distribution.
+	
+	Author: Christoff Bürger
+*/
+
+package pmchess.logic;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.*;
+
+import java.io.*;
+
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.charset.*;
+import java.nio.file.*;
+
+/*
+	Reading and writing of games in Portable Game Notation (PGN).
+	
+	Reading streams PGN files of arbitrary size with constant memory: files are read in blocks
+	through a file channel and each game is passed on to a consumer as soon as it is read. The
+	moves of games, given in Standard Algebraic Notation (SAN), are resolved against the
+	possible moves of a board and executed on it; games starting from a position given by a
+	'FEN' tag are supported. Comments, variations, numeric annotation glyphs and move suffix
+	annotations are skipped. To read in parallel, files are split at game boundaries (tag
+	sections following an empty line) into parts read concurrently. Invalid games (e.g., with
+	illegal moves) are skipped up to the next tag section and reported, such that a few broken
+	games do not spoil reading large archives.
+	
+	Games are written in the export format of the PGN standard: the Seven Tag Roster first,
+	followed by the other tags and the movetext with lines of at most 79 characters.
+*/
+public final class PGN
+{
+	private static final int block_size = 65536; // Bytes read at once from files.
+	private static final int line_length_max = 79;
+	private static final String[] seven_tag_roster =
+		{"Event", "Site", "Date", "Round", "White", "Black", "Result"};
+	private static final String figure_letters = "PRNBQK"; // Indexed by white figure key - 1.
+	private static final String initial_position =
+		"rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1";
+	
+	private PGN() // No instances.
+	{
+	}
+	
+	/*
+		A game read: its tags (in order of appearance), its moves (cf. 'Move') played from its
+		initial position (the 'FEN' tag, if given, otherwise the initial chess position) and the
+		result of its game termination marker ('1-0', '0-1', '1/2-1/2' or '*').
+	*/
+	public static final class Game
+	{
+		private final Map<String, String> tags;
+		private final int[] moves;
+		private final String result;
+		
+		protected Game(final Map<String, String> tags, final int[] moves, final String result)
+		{
+			this.tags = Collections.unmodifiableMap(tags);
+			this.moves = moves;
+			this.result = result;
+		}
+		
+		public Map<String, String> tags()
+		{
+			return tags;
+		}
+		
+		public int[] moves()
+		{
+			return moves.clone();
+		}
+		
+		public String result()
+		{
+			return result;
+		}
+		
+		/*
+			Board with all moves of the game played.
+		*/
+		public Board board()
+		{
+			final var fen =
+				tags.get("FEN");
+			final var board =
+				fen == null ? new Board() : Board.fen(fen);
+			for (final var move : moves)
+			{
+				board.execute(move);
+			}
+			return board;
+		}
+	}
+	
+	/*
+		Read all games of the given PGN file, passing each to the given consumer. With more than
+		one thread, the file is split into parts read in parallel; the consumer then is called
+		concurrently, and the games of different parts are passed in arbitrary order. Invalid
+		games are skipped; once all games are read, they are reported in file order to the given
+		'invalid' consumer, each by its game number (counting from 1 and including invalid
+		games), byte offset in the file and error. Returns the number of valid games read.
+		Throws an 'IOException' if the file cannot be read.
+	*/
+	public static long read(
+		  final Path file
+		, final int threads
+		, final Consumer<Game> consumer
+		, final Consumer<String> invalid)
+		throws IOException
+	{
+		try (final var channel = FileChannel.open(file, StandardOpenOption.READ))
+		{
+			final var size =
+				channel.size();
+			if (threads <= 1 || size < 2l * block_size)
+			{
+				final var reader =
+					new Reader(channel, 0, size, consumer);
+				final var games =
+					reader.read();
+				report(List.of(reader), invalid);
+				return games;
+			}
+			
+			// Split into parts at game boundaries (each channel read is positional and
+			//   therefore can be shared by all parts):
+			final var boundaries =
+				new ArrayList<Long>();
+			boundaries.add(0l);
+			for (var part = 1; part < threads; part++)
+			{
+				final var boundary =
+					game_boundary(channel, Math.max(
+						  size * part / threads
+						, boundaries.get(boundaries.size() - 1)));
+				if (boundary > boundaries.get(boundaries.size() - 1) && boundary < size)
+				{
+					boundaries.add(boundary);
+				}
+			}
+			boundaries.add(size);
+			
+			final var pool =
+				new ForkJoinPool(threads);
+			try
+			{
+				final var readers =
+					new ArrayList<Reader>();
+				final var tasks =
+					new ArrayList<ForkJoinTask<Long>>();
+				for (var part = 0; part < boundaries.size() - 1; part++)
+				{
+					final var reader =
+						new Reader(
+							  channel
+							, boundaries.get(part)
+							, boundaries.get(part + 1)
+							, consumer);
+					readers.add(reader);
+					tasks.add(pool.submit(() -> reader.read()));
+				}
+				var games = 0l;
+				for (final var task : tasks)
+				{
+					try
+					{
+						games += task.get();
+					}
+					catch (ExecutionException exception)
+					{
+						if (exception.getCause() instanceof IOException cause)
+						{
+							throw cause;
+						}
+						throw new IOException(exception.getCause().getMessage());
+					}
+					catch (InterruptedException exception)
+					{
+						throw new InterruptedIOException("ERROR: PGN reading interrupted.");
+					}
+				}
+				report(readers, invalid);
+				return games;
+			}
+			finally
+			{
+				pool.shutdownNow();
+			}
+		}
+	}
+	
+	/*
+		Report the invalid games of the given readers of consecutive parts of a file, numbering
+		games throughout all parts.
+	*/
+	private static void report(final List<Reader> readers, final Consumer<String> invalid)
+	{
+		var games_before = 0l; // Games of all previous parts.
+		for (final var reader : readers)
+		{
+			for (final var invalid_game : reader.invalid_games)
+			{
+				invalid.accept(
+					  "Invalid game " + (games_before + invalid_game.number)
+					+ " at byte " + invalid_game.position + " skipped: " + invalid_game.error);
+			}
+			games_before += reader.games + reader.invalid_games.size();
+		}
+	}
+	
+	/*
+		Beginning of the first game following the given file position, i.e., of the first tag
+		section after an empty line, or the file size if there is none.
+	*/
+	private static long game_boundary(final FileChannel channel, final long position)
+		throws IOException
+	{
+		final var lines =
+			new Lines(channel, position, channel.size());
+		lines.next(); // Skip the line containing the position, which may start before it.
+		var empty = false;
+		for (var line = lines.next(); line != null; line = lines.next())
+		{
+			if (empty && line.startsWith("["))
+			{
+				return lines.line_position;
+			}
+			empty = line.isBlank();
+		}
+		return channel.size();
+	}
+	
+	/*
+		Lines of a part of a file, read in blocks through its channel. Lines are decoded in
+		UTF-8, which covers the ASCII movetext of PGN (tag values may use any characters).
+	*/
+	private static final class Lines
+	{
+		private final FileChannel channel;
+		private final long end;
+		private final ByteBuffer block =
+			ByteBuffer.allocate(block_size).flip();
+		private long position; // File position of the next block.
+		private byte[] line =
+			new byte[256];
+		
+		private long line_position = -1; // File position of the line last read.
+		
+		private Lines(final FileChannel channel, final long begin, final long end)
+		{
+			this.channel = channel;
+			this.position = begin;
+			this.end = end;
+		}
+		
+		/*
+			Next line without line terminator or 'null' at the end of the part.
+		*/
+		private String next() throws IOException
+		{
+			line_position = position - block.remaining();
+			var length = 0;
+			while (true)
+			{
+				if (!block.hasRemaining())
+				{
+					block.clear();
+					block.limit((int) Math.min(block_size, end - position));
+					final var read =
+						block.limit() == 0 ? -1 : channel.read(block, position);
+					block.flip();
+					if (read <= 0)
+					{
+						return length == 0 && line_position >= end
+							? null
+							: decode(length);
+					}
+					position += read;
+				}
+				final var b =
+					block.get();
+				if (b == '\n')
+				{
+					return decode(length);
+				}
+				if (length == line.length)
+				{
+					line = Arrays.copyOf(line, 2 * length);
+				}
+				line[length++] = b;
+			}
+		}
+		
+		private String decode(final int length)
+		{
+			final var text =
+				new String(line, 0, length, StandardCharsets.UTF_8);
+			return text.endsWith("\r") ? text.substring(0, text.length() - 1) : text;
+		}
+	}
+	
+	/*
+		Invalid game of a part of a file: its number within the part (counting from 1 and
+		including invalid games), its file position and its error.
+	*/
+	private static final class InvalidGame
+	{
+		private final long number;
+		private final long position;
+		private final String error;
+		
+		private InvalidGame(final long number, final long position, final String error)
+		{
+			this.number = number;
+			this.position = position;
+			this.error = error;
+		}
+	}
+	
+	/*
+		Reader of the games of a part of a file, executing their moves on its own board. Invalid
+		games are skipped up to the next tag section following a line that is no tag.
+	*/
+	private static final class Reader
+	{
+		private final Lines lines;
+		private final Consumer<Game> consumer;
+		private final List<Game> finished = // Games of the line read, passed to the consumer.
+			new ArrayList<>();
+		
+		private Board board =
+			new Board();
+		private boolean board_initial = true; // Board has no position of a 'FEN' tag.
+		private Map<String, String> tags =
+			new LinkedHashMap<>();
+		private int[] moves =
+			new int[256];
+		private int moves_count = 0;
+		private boolean in_game = false; // Tags or movetext of a game read.
+		private boolean in_movetext = false;
+		private long game_position = -1; // File position of the game.
+		
+		private int variation_depth = 0;
+		private boolean in_comment = false;
+		
+		private long games = 0;
+		private final List<InvalidGame> invalid_games =
+			new ArrayList<>();
+		
+		private Reader(
+			  final FileChannel channel
+			, final long begin
+			, final long end
+			, final Consumer<Game> consumer)
+		{
+			this.lines = new Lines(channel, begin, end);
+			this.consumer = consumer;
+		}
+		
+		private long read() throws IOException
+		{
+			var skipping = false; // Skipping the rest of an invalid game.
+			var tag_line = false; // Last line read is a tag.
+			for (var line = lines.next(); line != null; line = lines.next())
+			{
+				if (skipping && (tag_line || !line.startsWith("[")))
+				{
+					tag_line = line.startsWith("[");
+					continue;
+				}
+				skipping = false;
+				try
+				{
+					read_line(line);
+				}
+				catch (final IllegalArgumentException exception)
+				{
+					invalid_games.add(new InvalidGame(
+						  games + finished.size() + invalid_games.size() + 1
+						, game_position
+						, exception.getMessage()));
+					reset();
+					skipping = true;
+				}
+				tag_line = line.startsWith("[");
+				pass_finished();
+			}
+			if (in_game)
+			{ // Game without termination marker at the end of the file:
+				finish("*");
+				pass_finished();
+			}
+			return games;
+		}
+		
+		/*
+			Pass the finished games to the consumer (outside of reading lines, such that errors of
+			the consumer are not taken for invalid games).
+		*/
+		private void pass_finished()
+		{
+			for (final var game : finished)
+			{
+				consumer.accept(game);
+				games++;
+			}
+			finished.clear();
+		}
+		
+		private void read_line(final String line)
+		{
+			if (line.startsWith("%") && !in_comment)
+			{
+				return; // Escape mechanism for lines of other programs.
+			}
+			if (line.startsWith("[") && !in_comment && variation_depth == 0)
+			{
+				if (in_movetext)
+				{ // Game without termination marker:
+					finish("*");
+				}
+				begin();
+				read_tag(line.trim());
+				return;
+			}
+			for (var i = 0; i < line.length();)
+			{
+				final var c =
+					line.charAt(i);
+				if (in_comment)
+				{
+					in_comment = c != '}';
+					i++;
+					continue;
+				}
+				switch (c)
+				{
+				case ' ', '\t':
+					i++;
+					continue;
+				case '{':
+					in_comment = true;
+					i++;
+					continue;
+				case ';':
+					return;
+				case '(':
+					variation_depth++;
+					i++;
+					continue;
+				case ')':
+					variation_depth = Math.max(variation_depth - 1, 0);
+					i++;
+					continue;
+				default:
+				}
+				var token_end =
+					i + 1;
+				while (token_end < line.length()
+					&& " \t{};()".indexOf(line.charAt(token_end)) == -1)
+				{
+					token_end++;
+				}
+				if (variation_depth == 0)
+				{
+					read_token(line.substring(i, token_end));
+				}
+				i = token_end;
+			}
+		}
+		
+		private void begin()
+		{
+			if (!in_game)
+			{
+				in_game = true;
+				game_position = lines.line_position;
+			}
+		}
+		
+		private void read_tag(final String line)
+		{
+			final var name_end =
+				line.indexOf(' ');
+			final var value_begin =
+				line.indexOf('"');
+			final var value_end =
+				line.lastIndexOf('"');
+			if (name_end < 2 || value_begin < name_end || value_end <= value_begin
+				|| !line.endsWith("]"))
+			{
+				throw new IllegalArgumentException("Invalid tag " + line + ".");
+			}
+			tags.put(
+				  line.substring(1, name_end)
+				, line.substring(value_begin + 1, value_end)
+					.replace("\\\"", "\"")
+					.replace("\\\\", "\\"));
+		}
+		
+		private void read_token(final String token)
+		{
+			begin();
+			if (!in_movetext)
+			{ // Setup the initial position of the game:
+				in_movetext = true;
+				final var fen =
+					tags.get("FEN");
+				if (fen != null)
+				{
+					board = Board.fen(fen);
+					board_initial = false;
+				}
+				else if (board_initial)
+				{
+					while (board.undo() != 0)
+					{
+					}
+				}
+				else
+				{
+					board = new Board();
+					board_initial = true;
+				}
+			}
+			switch (token)
+			{
+			case "1-0", "0-1", "1/2-1/2", "*":
+				finish(token);
+				return;
+			default:
+			}
+			if (token.charAt(0) == '$' || token.equals("e.p."))
+			{
+				return; // Numeric annotation glyph or en passant indication.
+			}
+			
+			// Skip move numbers (e.g., '12.', '12...' or '12.e4') and separate move suffix
+			//   annotations (e.g., '!?'):
+			var begin =
+				0;
+			if (!token.startsWith("0-0"))
+			{
+				while (begin < token.length() && Character.isDigit(token.charAt(begin)))
+				{
+					begin++;
+				}
+			}
+			while (begin < token.length() && ".!?".indexOf(token.charAt(begin)) != -1)
+			{
+				begin++;
+			}
+			if (begin == token.length())
+			{
+				return;
+			}
+			final var move =
+				move(board, token.substring(begin));
+			board.execute(move);
+			if (moves_count == moves.length)
+			{
+				moves = Arrays.copyOf(moves, 2 * moves_count);
+			}
+			moves[moves_count++] = move;
+		}
+		
+		private void finish(final String result)
+		{
+			finished.add(new Game(tags, Arrays.copyOf(moves, moves_count), result));
+			reset();
+		}
+		
+		/*
+			Forget the game read so far, finished or not, and expect the next.
+		*/
+		private void reset()
+		{
+			tags = new LinkedHashMap<>();
+			moves_count = 0;
+			in_game = false;
+			in_movetext = false;
+			variation_depth = 0;
+			in_comment = false;
+		}
+	}
+	
+	/*
+		Move of the given board's current position denoted by the given move in Standard
+		Algebraic Notation (SAN), e.g., 'Nbd7', 'exd6', 'e8=Q+' or 'O-O'. Check indications and
+		move suffix annotations (e.g., '!?') are ignored. Throws an 'IllegalArgumentException'
+		if the move is invalid or ambiguous.
+	*/
+	public static int move(final Board board, final String san)
+	{
+		var end =
+			san.length();
+		while (end > 0 && "+#!?".indexOf(san.charAt(end - 1)) != -1)
+		{
+			end--;
+		}
+		var notation =
+			san.substring(0, end);
+		
+		// Castlings are king moves by two squares:
+		final var y_castling =
+			board.player() ? 0 : 7;
+		switch (notation)
+		{
+		case "O-O", "0-0":
+			return legal_move(board, san, figure_key(board, 'K'), 4, y_castling, 6, y_castling, 0);
+		case "O-O-O", "0-0-0":
+			return legal_move(board, san, figure_key(board, 'K'), 4, y_castling, 2, y_castling, 0);
+		default:
+		}
+		
+		// Promotion (e.g., 'e8=Q', but also 'e8Q'):
+		var promotion =
+			0;
+		if (notation.length() > 2 && "QRBN".indexOf(notation.charAt(notation.length() - 1)) != -1)
+		{
+			promotion = figure_key(board, notation.charAt(notation.length() - 1));
+			notation = notation.substring(
+				  0
+				, notation.length() - (notation.charAt(notation.length() - 2) == '=' ? 2 : 1));
+		}
+		
+		// Moved figure, destination square and origin disambiguation:
+		final var figure =
+			notation.length() > 0 && "KQRBN".indexOf(notation.charAt(0)) != -1
+				? figure_key(board, notation.charAt(0))
+				: figure_key(board, 'P');
+		notation = notation
+			.substring(figure == figure_key(board, 'P') ? 0 : 1)
+			.replace("x", "")
+			.replace(":", "")
+			.replace("-", "");
+		if (notation.length() < 2 || notation.length() > 4)
+		{
+			throw new IllegalArgumentException("Invalid move " + san + ".");
+		}
+		final var X =
+			notation.charAt(notation.length() - 2) - 'a';
+		final var Y =
+			notation.charAt(notation.length() - 1) - '1';
+		var x = -1;
+		var y = -1;
+		for (final var c : notation.substring(0, notation.length() - 2).toCharArray())
+		{
+			if (c >= 'a' && c <= 'h')
+			{
+				x = c - 'a';
+			}
+			else if (c >= '1' && c <= '8')
+			{
+				y = c - '1';
+			}
+			else
+			{
+				throw new IllegalArgumentException("Invalid move " + san + ".");
+			}
+		}
+		if (X < 0 || X > 7 || Y < 0 || Y > 7)
+		{
+			throw new IllegalArgumentException("Invalid move " + san + ".");
+		}
+		return legal_move(board, san, figure, x, y, X, Y, promotion);
+	}
+	
+	private static int figure_key(final Board board, final char letter)
+	{
+		return figure_letters.indexOf(letter) + (board.player() ? 1 : 7);
+	}
+	
+	/*
+		The legal move of the given board's current position moving the figure of the given key
+		from the given origin (-1 for any file or rank) to the given destination, placing the
+		figure of the given promotion key (0 for no promotion).
+	*/
+	private static int legal_move(
+		  final Board board
+		, final String san
+		, final int figure
+		, final int x
+		, final int y
+		, final int X
+		, final int Y
+		, final int promotion)
+	{
+		var found =
+			0;
+		final var possible =
+			board.moves_possible();
+		for (var i = possible; i < possible + board.moves_possible_count(); i++)
+		{
+			final var move =
+				board.moves_possible(i);
+			if (Move.figure_moved(move).key == figure
+				&& Move.X(move) == X
+				&& Move.Y(move) == Y
+				&& (x == -1 || Move.x(move) == x)
+				&& (y == -1 || Move.y(move) == y)
+				&& Move.figure_placed(move).key == (promotion == 0 ? figure : promotion)
+				&& board.execute(move))
+			{
+				board.undo();
+				if (found != 0)
+				{
+					throw new IllegalArgumentException("Ambiguous move " + san + ".");
+				}
+				found = move;
+			}
+		}
+		if (found == 0)
+		{
+			throw new IllegalArgumentException("Invalid move " + san + ".");
+		}
+		return found;
+	}
+	
+	/*
+		The given legal move of the given board's current position in Standard Algebraic
+		Notation (SAN), including check and checkmate indications. Moveless draw claims have no
+		SAN; they are an empty string.
+	*/
+	public static String san(final Board board, final int move)
+	{
+		if (Move.is_moveless_draw_claim(move))
+		{
+			return "";
+		}
+		final var x =
+			Move.x(move);
+		final var y =
+			Move.y(move);
+		final var X =
+			Move.X(move);
+		final var Y =
+			Move.Y(move);
+		final var figure_moved =
+			Move.figure_moved(move);
+		final var figure_placed =
+			Move.figure_placed(move);
+		final var capture =
+			Move.figure_destination(move) != null || (figure_moved.is_pawn() && X != x);
+		final var san =
+			new StringBuilder(8);
+		if (figure_moved.is_king() && (X == x + 2 || X == x - 2))
+		{
+			san.append(X > x ? "O-O" : "O-O-O");
+		}
+		else
+		{
+			if (figure_moved.is_pawn())
+			{
+				if (capture)
+				{
+					san.append((char) ('a' + x));
+				}
+			}
+			else
+			{
+				san.append(figure_letters.charAt((figure_moved.key - 1) % 6));
+				
+				// Disambiguate by file, rank or both if other figures can move there as well:
+				var same_file = false;
+				var same_rank = false;
+				var ambiguous = false;
+				final var possible =
+					board.moves_possible();
+				for (var i = possible; i < possible + board.moves_possible_count(); i++)
+				{
+					final var other =
+						board.moves_possible(i);
+					if (Move.figure_moved(other) == figure_moved
+						&& Move.X(other) == X
+						&& Move.Y(other) == Y
+						&& (Move.x(other) != x || Move.y(other) != y)
+						&& board.execute(other))
+					{
+						board.undo();
+						ambiguous = true;
+						same_file |= Move.x(other) == x;
+						same_rank |= Move.y(other) == y;
+					}
+				}
+				if (ambiguous && (!same_file || same_rank))
+				{
+					san.append((char) ('a' + x));
+				}
+				if (ambiguous && same_file)
+				{
+					san.append((char) ('1' + y));
+				}
+			}
+			if (capture)
+			{
+				san.append('x');
+			}
+			san.append((char) ('a' + X)).append((char) ('1' + Y));
+			if (figure_placed != figure_moved)
+			{
+				san.append('=').append(figure_letters.charAt((figure_placed.key - 1) % 6));
+			}
+		}
+		
+		// Check and checkmate:
+		if (board.execute(move))
+		{
+			if (board.check(board.player()))
+			{
+				san.append(board.legal_moves().length == 0 ? '#' : '+');
+			}
+			board.undo();
+		}
+		return san.toString();
+	}
+	
+	/*
+		Write the game of the given board, from the beginning of its game history to its current
+		position, in PGN. The given tags are written in addition to the Seven Tag Roster, whose
+		tags not given are unknown ('?'). If no 'Result' tag is given, the result is the status
+		of the current position ('*' if the game is not finished).
+	*/
+	public static void write(
+		  final Appendable output
+		, final Board board
+		, final Map<String, String> tags)
+		throws IOException
+	{
+		final var game =
+			board.fork();
+		final var moves =
+			new int[game.turn() - 1];
+		for (var turn = moves.length; turn > 0; turn--)
+		{
+			moves[turn - 1] = game.previous_move(turn);
+		}
+		final var result =
+			tags.containsKey("Result") ? tags.get("Result") : switch (game.status())
+			{
+			case Checkmate -> game.player() ? "0-1" : "1-0";
+			case Stalemate, Draw -> "1/2-1/2";
+			default -> "*";
+			};
+		while (game.undo() != 0)
+		{
+		}
+		
+		// Tags:
+		final var all_tags =
+			new LinkedHashMap<String, String>();
+		for (final var tag : seven_tag_roster)
+		{
+			all_tags.put(tag, tag.equals("Date") ? "????.??.??" : "?");
+		}
+		all_tags.putAll(tags);
+		all_tags.put("Result", result);
+		final var fen =
+			game.fen();
+		if (!fen.equals(initial_position))
+		{
+			all_tags.put("SetUp", "1");
+			all_tags.put("FEN", fen);
+		}
+		for (final var tag : all_tags.entrySet())
+		{
+			output.append('[').append(tag.getKey()).append(" \"")
+				.append(tag.getValue().replace("\\", "\\\\").replace("\"", "\\\""))
+				.append("\"]\n");
+		}
+		output.append('\n');
+		
+		// Movetext:
+		final var line =
+			new StringBuilder(line_length_max + 16);
+		var numbered = false; // Move number of Black's move written.
+		for (final var move : moves)
+		{
+			if (Move.is_moveless_draw_claim(move))
+			{
+				append(output, line, "{Draw claimed}");
+				numbered = false;
+			}
+			else
+			{
+				if (game.player() || !numbered)
+				{
+					append(output, line, game.move() + (game.player() ? "." : "..."));
+				}
+				append(output, line, san(game, move));
+				numbered = true;
+			}
+			game.execute(move);
+		}
+		append(output, line, result);
+		output.append(line).append("\n\n");
+	}
+	
+	/*
+		Append the given token to the given movetext line, writing the line to the given output
+		first if the token does not fit anymore.
+	*/
+	private static void append(
+		  final Appendable output
+		, final StringBuilder line
+		, final String token)
+		throws IOException
+	{
+		if (line.length() > 0 && line.length() + 1 + token.length() > line_length_max)
+		{
+			output.append(line).append('\n');
+			line.setLength(0);
+		}
+		if (line.length() > 0)
+		{
+			line.append(' ');
+		}
+		line.append(token);
+	}
+}
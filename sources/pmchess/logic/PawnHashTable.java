@@ -0,0 +1,89 @@
+/*
+	This program and the accompanying materials are made available under the terms of the MIT
+	license (X11 license) which accompanies this distribution.
+	
+	Author: Christoff Bürger
+*/
+
+package pmchess.logic;
+
+/*
+	Fixed-size cache of pawn formation evaluations, indexed by pawn hash (cf. 'Board.pawn_hash').
+	Pawn formations rarely change between the positions of a search; hence, most evaluations
+	just look up their pawn formation score.
+	
+	The table is lockless and can be shared by concurrent searches: each entry consists of its
+	data and its key XOR its data. Entries torn by concurrent stores fail the key check and are
+	just misses. Like for 'EvaluationCache', probes and hits are counted by the statistics of
+	the probing search, if enabled, instead of counters written by all threads.
+*/
+public final class PawnHashTable
+{
+	private final long[] keys;
+	private final long[] data;
+	private final int index_mask;
+	
+	/*
+		Table with 2^'size_log2' entries, each of 16 bytes.
+	*/
+	public PawnHashTable(final int size_log2)
+	{
+		if (size_log2 < 0 || size_log2 > 24)
+		{
+			throw new IllegalArgumentException("ERROR: Invalid pawn hash table size.");
+		}
+		keys = new long[1 << size_log2];
+		data = new long[1 << size_log2];
+		index_mask = (1 << size_log2) - 1;
+		// Empty entries must not match any key, in particular not the key 0 (no pawns):
+		for (var i = 0; i < keys.length; i++)
+		{
+			keys[i] = -1l;
+		}
+	}
+	
+	/*
+		Cached data of the pawn formation with the given hash or 'miss' if there is none.
+	*/
+	protected long probe(final long key, final long miss)
+	{
+		final var i =
+			(int) key & index_mask;
+		final var entry_data =
+			data[i];
+		final var hit =
+			(keys[i] ^ entry_data) == key;
+		if (SearchStatistics.enabled)
+		{
+			final var statistics =
+				SearchStatistics.current.get();
+			if (statistics != null)
+			{
+				statistics.pawn_probes++;
+				statistics.pawn_hits += hit ? 1 : 0;
+			}
+		}
+		return hit ? entry_data : miss;
+	}
+	
+	/*
+		Cache the given data for the pawn formation with the given hash, replacing any previous
+		entry of the same index.
+	*/
+	protected void store(final long key, final long data)
+	{
+		final var i =
+			(int) key & index_mask;
+		this.data[i] = data;
+		keys[i] = key ^ data;
+	}
+	
+	public void clear()
+	{
+		for (var i = 0; i < keys.length; i++)
+		{
+			keys[i] = -1l;
+			data[i] = 0;
+		}
+	}
+}
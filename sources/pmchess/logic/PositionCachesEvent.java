@@ -0,0 +1,31 @@
+/*
+	This program and the accompanying materials are made available under the terms of the MIT
+	license (X11 license) which accompanies this distribution.
+	
+	Author: Christoff Bürger
+*/
+
+package pmchess.logic;
+
+import jdk.jfr.*;
+
+/*
+	Java Flight Recorder event of a rebuild of the position caches of a board (move rules and
+	repetition analyses of the game history); disabled by default (cf. 'SearchEvent'). Only
+	rebuilds are recorded, not accesses to already cached positions.
+*/
+@Name("pmchess.PositionCaches")
+@Label("Position Caches")
+@Category({"pmChess", "Board"})
+@Description("Rebuild of the position caches of a board.")
+@Enabled(false)
+@StackTrace(false)
+public final class PositionCachesEvent extends Event
+{
+	@Label("Turn")
+	protected int turn;
+	
+	@Label("Positions")
+	@Description("Number of positions whose caches were rebuilt.")
+	protected int positions;
+}
@@ -0,0 +1,542 @@
+/*
+	This program and the accompanying materials are made available under the terms of the MIT
+	license (X11 license) which accompanies this distribution.
+	
+	Author: Christoff Bürger
+*/
+
+package pmchess.logic;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+import java.io.*;
+
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.file.*;
+
+/*
+	Index of the positions of the games of a game archive (cf. 'GameArchive'), to find all games
+	that reached a position and the statistics of the moves played in it.
+	
+	The index is a file (the archive file name with suffix '.positions') of postings sorted by
+	position: each posting is the Zobrist hash of a position (cf. 'Board.hash') followed by the
+	game and ply the position was reached at ('game << 16 | ply'), both longs. Postings follow
+	the magic number 'pmChessP' and their number (long). The index is memory-mapped, such that
+	lookups are binary searches directly on the file, without loading it.
+	
+	Indexes are built in parallel: games are replayed in chunks, each chunk's postings sorted
+	and written to a temporary run file, and all runs finally merged; hence, indexes of any
+	size are built with bounded memory. Opening books are built the same way (cf. 'write_run'
+	and 'merge').
+*/
+public final class PositionIndex
+{
+	private static final long magic = 0x706D436865737350l; // 'pmChessP'
+	private static final int header_size = 16;
+	private static final int segment_bits = 26; // Postings per mapped segment (1 GiB).
+	protected static final int run_postings = 1 << 20; // Postings per sorted run when building.
+	
+	private final GameArchive archive;
+	private final MappedByteBuffer[] segments;
+	private final long postings;
+	
+	private PositionIndex(
+		  final GameArchive archive
+		, final MappedByteBuffer[] segments
+		, final long postings)
+	{
+		this.archive = archive;
+		this.segments = segments;
+		this.postings = postings;
+	}
+	
+	private static Path index_file(final Path archive)
+	{
+		return archive.resolveSibling(archive.getFileName() + ".positions");
+	}
+	
+	/*
+		Consumer of the postings of sorted runs in order (cf. 'merge').
+	*/
+	@FunctionalInterface
+	protected interface PostingConsumer
+	{
+		void accept(long hash, long value) throws IOException;
+	}
+	
+	/*
+		Statistics of a move played in a position: the number of games it was played in and
+		their results.
+	*/
+	public static final class MoveStatistics
+	{
+		private final int move;
+		protected int games = 0;
+		protected int white_wins = 0;
+		protected int draws = 0;
+		protected int black_wins = 0;
+		
+		private MoveStatistics(final int move)
+		{
+			this.move = move;
+		}
+		
+		public int move()
+		{
+			return move;
+		}
+		
+		public int games()
+		{
+			return games;
+		}
+		
+		public int white_wins()
+		{
+			return white_wins;
+		}
+		
+		public int draws()
+		{
+			return draws;
+		}
+		
+		public int black_wins()
+		{
+			return black_wins;
+		}
+	}
+	
+	/*
+		Build the index of the given archive with the given number of threads, replacing any
+		existing index. Returns the number of postings.
+	*/
+	public static long build(final Path archive, final int threads) throws IOException
+	{
+		final var games =
+			GameArchive.open(archive);
+		final var directory =
+			archive.toAbsolutePath().getParent();
+		final var runs =
+			Collections.synchronizedList(new ArrayList<Path>());
+		final var pool =
+			new ForkJoinPool(Math.max(threads, 1));
+		try
+		{
+			// Replay chunks of games in parallel, writing sorted runs of postings:
+			final var chunk_size =
+				Math.max(games.games() / (8 * Math.max(threads, 1)), 1);
+			final var tasks =
+				new ArrayList<ForkJoinTask<?>>();
+			for (var begin = 0; begin < games.games(); begin += chunk_size)
+			{
+				final var chunk_begin =
+					begin;
+				final var chunk_end =
+					Math.min(begin + chunk_size, games.games());
+				tasks.add(pool.submit(() ->
+				{
+					write_runs(games, chunk_begin, chunk_end, directory, runs);
+					return null;
+				}));
+			}
+			for (final var task : tasks)
+			{
+				try
+				{
+					task.get();
+				}
+				catch (ExecutionException exception)
+				{
+					if (exception.getCause() instanceof UncheckedIOException cause)
+					{
+						throw cause.getCause();
+					}
+					throw new IOException(
+						  "ERROR: Invalid archive " + archive + ": "
+						+ exception.getCause().getMessage());
+				}
+				catch (InterruptedException exception)
+				{
+					throw new InterruptedIOException("ERROR: Index building interrupted.");
+				}
+			}
+			
+			try (final var output = new DataOutputStream(new BufferedOutputStream(
+				Files.newOutputStream(index_file(archive)), 65536)))
+			{
+				var postings = 0l;
+				for (final var run : runs)
+				{
+					postings += Files.size(run) / 16;
+				}
+				output.writeLong(magic);
+				output.writeLong(postings);
+				merge(runs, (final long hash, final long game) ->
+				{
+					output.writeLong(hash);
+					output.writeLong(game);
+				});
+				return postings;
+			}
+		}
+		finally
+		{
+			pool.shutdownNow();
+			for (final var run : runs)
+			{
+				Files.deleteIfExists(run);
+			}
+		}
+	}
+	
+	private static void write_runs(
+		  final GameArchive archive
+		, final int begin
+		, final int end
+		, final Path directory
+		, final List<Path> runs)
+	{
+		final var reused_board =
+			new Board();
+		final var postings =
+			new long[2 * run_postings];
+		final var count =
+			new int[]{0};
+		try
+		{
+			for (var game = begin; game < end; game++)
+			{
+				if (count[0] + archive.plies(game) + 1 > run_postings)
+				{ // Game does not fit into the current run anymore:
+					runs.add(write_run(postings, count[0], directory));
+					count[0] = 0;
+				}
+				final var game_key =
+					(long) game << 16;
+				archive.replay(
+					  game
+					, archive.initial_board(game, reused_board)
+					, (final Board board) ->
+					{
+						postings[2 * count[0]] = board.hash();
+						postings[2 * count[0] + 1] = game_key | (board.turn() - 1);
+						count[0]++;
+					});
+			}
+			if (count[0] > 0)
+			{
+				runs.add(write_run(postings, count[0], directory));
+			}
+		}
+		catch (final IOException exception)
+		{
+			throw new UncheckedIOException(exception);
+		}
+	}
+	
+	/*
+		Sort the given number of postings (pairs of hash and value, cf. 'sort') and write them to
+		a new temporary run file in the given directory. Returns the run file.
+	*/
+	protected static Path write_run(final long[] postings, final int count, final Path directory)
+		throws IOException
+	{
+		sort(postings, 0, count - 1);
+		final var run =
+			Files.createTempFile(directory, "pmChess-positions-", ".run");
+		try (final var output = new DataOutputStream(new BufferedOutputStream(
+			Files.newOutputStream(run), 65536)))
+		{
+			for (var i = 0; i < 2 * count; i++)
+			{
+				output.writeLong(postings[i]);
+			}
+		}
+		return run;
+	}
+	
+	/*
+		Sort the given postings (pairs of hash and value, e.g., game/ply) between the given
+		posting indices (inclusive) by hash first and then value.
+	*/
+	private static void sort(final long[] postings, final int low, final int high)
+	{
+		if (high - low < 16)
+		{ // Insertion sort:
+			for (var i = low + 1; i <= high; i++)
+			{
+				final var hash =
+					postings[2 * i];
+				final var game =
+					postings[2 * i + 1];
+				var j = i - 1;
+				for (;
+					j >= low && compare(postings[2 * j], postings[2 * j + 1], hash, game) > 0;
+					j--)
+				{
+					postings[2 * j + 2] = postings[2 * j];
+					postings[2 * j + 3] = postings[2 * j + 1];
+				}
+				postings[2 * j + 2] = hash;
+				postings[2 * j + 3] = game;
+			}
+			return;
+		}
+		final var middle =
+			(low + high) >>> 1;
+		final var pivot_hash =
+			postings[2 * middle];
+		final var pivot_game =
+			postings[2 * middle + 1];
+		var i = low;
+		var j = high;
+		while (i <= j)
+		{
+			while (compare(postings[2 * i], postings[2 * i + 1], pivot_hash, pivot_game) < 0)
+			{
+				i++;
+			}
+			while (compare(postings[2 * j], postings[2 * j + 1], pivot_hash, pivot_game) > 0)
+			{
+				j--;
+			}
+			if (i <= j)
+			{
+				final var hash =
+					postings[2 * i];
+				final var game =
+					postings[2 * i + 1];
+				postings[2 * i] = postings[2 * j];
+				postings[2 * i + 1] = postings[2 * j + 1];
+				postings[2 * j] = hash;
+				postings[2 * j + 1] = game;
+				i++;
+				j--;
+			}
+		}
+		sort(postings, low, j);
+		sort(postings, i, high);
+	}
+	
+	private static int compare(
+		  final long hash_1
+		, final long game_1
+		, final long hash_2
+		, final long game_2)
+	{
+		return hash_1 != hash_2 ? Long.compare(hash_1, hash_2) : Long.compare(game_1, game_2);
+	}
+	
+	/*
+		Merge the given sorted runs, passing all their postings in order to the given consumer.
+	*/
+	protected static void merge(final List<Path> runs, final PostingConsumer consumer)
+		throws IOException
+	{
+		final var inputs =
+			new ArrayList<DataInputStream>();
+		try
+		{
+			final var sizes =
+				new long[runs.size()];
+			for (var run = 0; run < runs.size(); run++)
+			{
+				sizes[run] = Files.size(runs.get(run)) / 16;
+				inputs.add(new DataInputStream(new BufferedInputStream(
+					Files.newInputStream(runs.get(run)), 65536)));
+			}
+			
+			// Current posting of each run, ordered by priority queue of run numbers:
+			final var hashes =
+				new long[runs.size()];
+			final var games =
+				new long[runs.size()];
+			final var queue =
+				new PriorityQueue<Integer>(
+					  Math.max(runs.size(), 1)
+					, (final Integer a, final Integer b) ->
+						compare(hashes[a], games[a], hashes[b], games[b]));
+			for (var run = 0; run < runs.size(); run++)
+			{
+				if (sizes[run]-- > 0)
+				{
+					hashes[run] = inputs.get(run).readLong();
+					games[run] = inputs.get(run).readLong();
+					queue.add(run);
+				}
+			}
+			while (!queue.isEmpty())
+			{
+				final int run =
+					queue.poll();
+				consumer.accept(hashes[run], games[run]);
+				if (sizes[run]-- > 0)
+				{
+					hashes[run] = inputs.get(run).readLong();
+					games[run] = inputs.get(run).readLong();
+					queue.add(run);
+				}
+			}
+		}
+		finally
+		{
+			for (final var input : inputs)
+			{
+				input.close();
+			}
+		}
+	}
+	
+	/*
+		Open the index of the given archive. Throws an 'IOException' if the archive or its index
+		cannot be read or are invalid.
+	*/
+	public static PositionIndex open(final Path archive) throws IOException
+	{
+		final var games =
+			GameArchive.open(archive);
+		try (final var channel = FileChannel.open(index_file(archive), StandardOpenOption.READ))
+		{
+			final var size =
+				channel.size();
+			final var header =
+				ByteBuffer.allocate(header_size);
+			channel.read(header, 0);
+			final var postings =
+				header.getLong(8);
+			if (size < header_size || header.getLong(0) != magic
+				|| postings < 0 || size != header_size + 16 * postings)
+			{
+				throw new IOException("ERROR: Invalid position index of " + archive + ".");
+			}
+			final var segments =
+				new MappedByteBuffer[(int) ((postings + (1 << segment_bits) - 1) >>> segment_bits)];
+			for (var segment = 0; segment < segments.length; segment++)
+			{
+				final var begin =
+					(long) segment << segment_bits;
+				segments[segment] = channel.map(
+					  FileChannel.MapMode.READ_ONLY
+					, header_size + 16 * begin
+					, 16 * Math.min(1l << segment_bits, postings - begin));
+			}
+			return new PositionIndex(games, segments, postings);
+		}
+	}
+	
+	private long hash(final long posting)
+	{
+		return segments[(int) (posting >>> segment_bits)].getLong(
+			(int) (posting & ((1 << segment_bits) - 1)) << 4);
+	}
+	
+	private long game(final long posting)
+	{
+		return segments[(int) (posting >>> segment_bits)].getLong(
+			((int) (posting & ((1 << segment_bits) - 1)) << 4) + 8);
+	}
+	
+	/*
+		Index of the first posting of the given hash (binary search).
+	*/
+	private long first(final long hash)
+	{
+		var low = 0l;
+		var high = postings;
+		while (low < high)
+		{
+			final var middle =
+				(low + high) >>> 1;
+			if (hash(middle) < hash)
+			{
+				low = middle + 1;
+			}
+			else
+			{
+				high = middle;
+			}
+		}
+		return low;
+	}
+	
+	/*
+		Games of the archive that reached the position of the given board, in ascending order.
+	*/
+	public int[] games(final Board board)
+	{
+		final var hash =
+			board.hash();
+		var games =
+			new int[16];
+		var count = 0;
+		for (var posting = first(hash); posting < postings && hash(posting) == hash; posting++)
+		{
+			final var game =
+				(int) (game(posting) >>> 16);
+			if (count > 0 && games[count - 1] == game)
+			{
+				continue; // Position repeated within the game.
+			}
+			if (count == games.length)
+			{
+				games = Arrays.copyOf(games, 2 * count);
+			}
+			games[count++] = game;
+		}
+		return Arrays.copyOf(games, count);
+	}
+	
+	/*
+		Statistics of the moves played in the position of the given board by the games of the
+		archive, most played first. Games playing several moves in the position (because it
+		repeated) count for each of these moves.
+	*/
+	public List<MoveStatistics> statistics(final Board board)
+	{
+		final var hash =
+			board.hash();
+		final var statistics =
+			new LinkedHashMap<Integer, MoveStatistics>();
+		final var game_moves =
+			new HashSet<Integer>(); // Moves counted for the current game.
+		var previous_game = -1;
+		for (var posting = first(hash); posting < postings && hash(posting) == hash; posting++)
+		{
+			final var game_ply =
+				game(posting);
+			final var game =
+				(int) (game_ply >>> 16);
+			final var encoded =
+				archive.move(game, (int) (game_ply & 0xFFFF));
+			if (game != previous_game)
+			{
+				game_moves.clear();
+				previous_game = game;
+			}
+			if (encoded == -1 || !game_moves.add(encoded))
+			{
+				continue; // Game ended in the position or move already counted for the game.
+			}
+			final var move_statistics =
+				statistics.computeIfAbsent(
+					  encoded
+					, (final Integer key) -> new MoveStatistics(GameArchive.decode(board, key)));
+			move_statistics.games++;
+			switch (archive.result(game))
+			{
+			case "1-0" -> move_statistics.white_wins++;
+			case "0-1" -> move_statistics.black_wins++;
+			case "1/2-1/2" -> move_statistics.draws++;
+			default -> {}
+			}
+		}
+		final var result =
+			new ArrayList<MoveStatistics>(statistics.values());
+		result.sort((final MoveStatistics a, final MoveStatistics b) ->
+			Integer.compare(b.games, a.games));
+		return result;
+	}
+}
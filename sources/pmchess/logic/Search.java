@@ -7,10 +7,12 @@
 
 package pmchess.logic;
 
+import java.util.function.*;
+
 public final class Search
 {
-	private static final int max_score = 999999;
-	private static final int min_score = -999999;
+	protected static final int max_score = 999999;
+	protected static final int min_score = -999999;
 	private static final long search_budget = 15000000000l; // 15s
 	private static final int search_depth_min = 4;
 	
@@ -20,6 +22,12 @@ public final class Search
 		search_budget;
 	private int search_depth =
 		search_depth_min;
+	private SearchStatistics statistics =
+		null;
+	private OpeningBook opening_book =
+		null;
+	private Tablebase tablebase =
+		null;
 	
 	public int get_search_depth()
 	{
@@ -40,183 +48,244 @@ public final class Search
 		}
 	}
 	
-	public int select_move(final Board board, final Evaluator evaluator)
+	/*
+		Statistics of the last move selection or 'null' if there was none or statistics are not
+		enabled (cf. 'SearchStatistics.enabled').
+	*/
+	public SearchStatistics statistics()
 	{
-		final int search_depth;
 		synchronized (state_lock)
 		{
-			search_depth = (0.5 * search_duration * board.moves_possible_count())
-				< search_budget
-				? this.search_depth + 1
-				: this.search_depth;
+			return statistics;
+		}
+	}
+	
+	/*
+		Set the opening book probed before each move selection; book moves are selected
+		without any search. 'null' disables the probing.
+	*/
+	public void set_opening_book(final OpeningBook opening_book)
+	{
+		synchronized (state_lock)
+		{
+			this.opening_book = opening_book;
+		}
+	}
+	
+	/*
+		Set the endgame tablebase probed before each move selection and while searching; moves
+		of positions it covers are selected without any search. 'null' disables the probing.
+	*/
+	public void set_tablebase(final Tablebase tablebase)
+	{
+		synchronized (state_lock)
+		{
+			this.tablebase = tablebase;
+		}
+	}
+	
+	private Tablebase tablebase()
+	{
+		synchronized (state_lock)
+		{
+			return tablebase;
 		}
+	}
+	
+	/*
+		Move selected without any search, i.e., of the opening book or tablebase, or 0 if there
+		is none.
+	*/
+	private int known_move(final Board board)
+	{
+		final OpeningBook opening_book;
+		final Tablebase tablebase;
+		synchronized (state_lock)
+		{
+			opening_book = this.opening_book;
+			tablebase = this.tablebase;
+		}
+		final var book_move =
+			opening_book == null ? 0 : opening_book.move(board);
+		return book_move != 0 || tablebase == null ? book_move : tablebase.move(board);
+	}
+	
+	public int select_move(final Board board, final Evaluator evaluator)
+	{
+		final var known_move =
+			known_move(board);
+		if (known_move != 0)
+		{
+			return known_move;
+		}
+		
+		final var event =
+			new SearchEvent();
+		event.begin();
+		
+		final var search_depth =
+			next_search_depth(board);
 		
 		final var start_time =
 			System.nanoTime();
 		
-		var best_move = 0;
-		var alpha =
-			Search.min_score;
-		final var beta =
-			2 * Search.max_score;
-		for (int i = board.moves_possible(), move = board.moves_possible(i);
-			move != 0;
-			move = board.moves_possible(++i))
-		{
-			if (board.execute(move))
-			{
-				final var score =
-					-alpha_beta_nega_max(
-						  board
-						, -beta
-						, -alpha
-						, search_depth
-						, evaluator);
-				if (score > alpha)
-				{
-					alpha = score;
-					best_move = move;
-				}
-				board.undo();
-			}
-			// Pruning doesn't make any sense at the root.
-		}
+		final var search_stack =
+			new SearchStack(board, evaluator, tablebase(), search_depth);
+		search_stack.search(Long.MAX_VALUE);
+		final var best_move =
+			search_stack.best_move();
 		
 		final var end_time =
 			System.nanoTime();
 		
-		synchronized (state_lock)
+		update_statistics(search_stack.statistics(), search_depth, end_time - start_time);
+		update_search_depth(search_depth, end_time - start_time, best_move);
+		
+		event.end();
+		if (event.shouldCommit())
 		{
-			search_duration = end_time - start_time;
-			if (search_duration > search_budget)
-			{
-				this.search_depth -= (search_duration / search_budget);
-			}
-			else
-			{
-				this.search_depth = search_depth;
-			}
-			if (best_move != 0
-				&& !Move.is_moveless_draw_claim(best_move)
-				&& Move.figure_moved(best_move).is_pawn()
-				&& !Move.figure_placed(best_move).is_pawn())
-			{ // Pawn promotion adds many NEW moves in high search-depth late games:
-				this.search_depth--;
-			}
-			if (this.search_depth < search_depth_min)
-			{
-				this.search_depth = search_depth_min;
-			}
+			event.set(search_depth, search_stack.statistics(), best_move);
+			event.commit();
 		}
 		
 		return best_move;
 	}
 	
-	private int alpha_beta_nega_max(
+	/*
+		Asynchronous alternative to 'select_move': return a search task, to be run by a
+		'SearchScheduler', selecting a move for the given board. The board is used by the task and
+		must not be used otherwise until the task finished. The selected move is passed to the
+		given consumer by the scheduler thread finishing the task.
+	*/
+	public SearchTask select_move_task(
 		  final Board board
-		, int alpha
-		, final int beta
+		, final Evaluator evaluator
+		, final IntConsumer move_selected)
+	{
+		final var known_move =
+			known_move(board);
+		if (known_move != 0)
+		{
+			return new SearchTask(
+				  known_move
+				, (final SearchTask task) -> move_selected.accept(task.best_move()));
+		}
+		
+		final var event =
+			new SearchEvent();
+		event.begin();
+		final var search_depth =
+			next_search_depth(board);
+		return new SearchTask(
+			  new SearchStack(board, evaluator, tablebase(), search_depth)
+			, (final SearchTask task) ->
+			{
+				update_statistics(task.statistics(), search_depth, task.duration());
+				update_search_depth(search_depth, task.duration(), task.best_move());
+				event.end();
+				if (event.shouldCommit())
+				{
+					event.set(search_depth, task.statistics(), task.best_move());
+					event.commit();
+				}
+				move_selected.accept(task.best_move());
+			});
+	}
+	
+	/*
+		Number of plies to the mate implied by the given score of a search task (cf.
+		'SearchTask.best_score'), including the mates of tablebase wins and losses: positive if
+		the player moving mates, negative if it is mated and 0 if the score implies no mate.
+	*/
+	public static int mate_plies(final int score)
+	{
+		final var magnitude =
+			Math.abs(score);
+		final var plies =
+			magnitude > max_score / 4 * 3 // mate found by search
+				? max_score - magnitude
+				: (magnitude > max_score / 4 // tablebase win or loss
+					? max_score / 2 - magnitude
+					: 0);
+		return score < 0 ? -plies : plies;
+	}
+	
+	/*
+		Search task of the given fixed depth, e.g., for analyses searching increasing depths,
+		whose root moves can be split among concurrent tasks (cf. the 'SearchStack' constructor
+		with 'root_part' and 'root_parts'). Like for 'select_move_task', the given board is used
+		by the task. The finished task is passed to the given consumer by the scheduler thread
+		finishing it. Unlike move selections, analyses do not adjust search depths. Positions
+		covered by the given tablebase (if not 'null') are not searched further.
+	*/
+	public static SearchTask analysis_task(
+		  final Board board
+		, final Evaluator evaluator
+		, final Tablebase tablebase
 		, final int depth
-		, final Evaluator evaluator)
+		, final int root_part
+		, final int root_parts
+		, final Consumer<SearchTask> finished)
 	{
-		if (depth == 0)
+		return new SearchTask(
+			  new SearchStack(board, evaluator, tablebase, depth, root_part, root_parts)
+			, finished);
+	}
+	
+	private int next_search_depth(final Board board)
+	{
+		synchronized (state_lock)
 		{
-			return evaluator.score(board, board.player());
+			return (0.5 * search_duration * board.moves_possible_count())
+				< search_budget
+				? this.search_depth + 1
+				: this.search_depth;
 		}
-		var any_move_done = false;
-		var result =
-			Search.min_score;
-		for (int i = board.moves_possible(), move = board.moves_possible(i);
-			move != 0;
-			move = board.moves_possible(++i))
+	}
+	
+	private void update_statistics(
+		  final SearchStatistics statistics
+		, final int search_depth
+		, final long search_duration)
+	{
+		if (!SearchStatistics.enabled)
 		{
-			if (board.execute(move))
-			{
-				result = -alpha_beta_nega_max(
-					  board
-					, -beta
-					, -alpha
-					, depth - 1
-					, evaluator);
-				board.undo();
-				any_move_done = true;
-			}
-			if (result >= beta)
-			{
-				return beta;
-			}
-			if (result > alpha)
-			{
-				alpha = result;
-			}
+			return;
 		}
-		if (!any_move_done)
+		statistics.iteration(search_depth, search_duration);
+		synchronized (state_lock)
 		{
-			return board.check(board.player())
-				? Search.min_score // current player lost
-				: evaluator.score(board, board.player()); // stalemate
+			this.statistics = statistics;
 		}
-		return alpha;
 	}
 	
-	private int select_move_2(final Board board)
+	private void update_search_depth(
+		  final int search_depth
+		, final long search_duration
+		, final int best_move)
 	{
-		var depth = 0;
-		var move_index =
-			board.moves_possible();
-		var move =
-			board.moves_possible(move_index);
-		var last_score =
-			Integer.MIN_VALUE;
-		var best_score =
-			last_score;
-		var best_move = 0;
-		while (true)
+		synchronized (state_lock)
 		{
-			if (depth == 0) {
-				if (last_score > best_score)
-				{
-					best_score = last_score;
-					best_move = board.moves_selected();
-				}
-				if (move == 0)
-				{
-					return best_move;
-				}
+			this.search_duration = search_duration;
+			if (search_duration > search_budget)
+			{
+				this.search_depth -= (search_duration / search_budget);
 			}
-			if (move == 0) { // Evaluate early leafs and backtrack:
-				if (board.moves_selected() == 0)
-				{
-					// TODO: evaluation
-				}
-				board.undo();
-				--depth;
-				move_index = board.moves_selected(
-					/*
-						Requires method to return index of selected move, not selected move.
-					*/) + 1;
-				move = board.moves_possible(move_index);
-				continue;
+			else
+			{
+				this.search_depth = search_depth;
+			}
+			if (best_move != 0
+				&& !Move.is_moveless_draw_claim(best_move)
+				&& Move.figure_moved(best_move).is_pawn()
+				&& !Move.figure_placed(best_move).is_pawn())
+			{ // Pawn promotion adds many NEW moves in high search-depth late games:
+				this.search_depth--;
 			}
-			else if (!board.execute(move))
-			{ // Skip invalid moves:
-				move = board.moves_possible(++move_index);
-				continue;
+			if (this.search_depth < search_depth_min)
+			{
+				this.search_depth = search_depth_min;
 			}
-			else if (++depth == 4)
-			{ // Evaluate max-search-depth leafs and backtrack:
-				// TODO: evaluation
-				board.undo();
-				--depth;
-				move_index = board.moves_selected(
-					/*
-						Requires method to return index of selected move, not selected move.
-					*/) + 1;
-				move = board.moves_possible(move_index);
-				continue;
-			} // Proceed depth-first-search:
-			move_index = board.moves_possible();
-			move = board.moves_possible(move_index);
 		}
 	}
 }
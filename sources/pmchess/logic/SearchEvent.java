@@ -0,0 +1,43 @@
+/*
+	This program and the accompanying materials are made available under the terms of the MIT
+	license (X11 license) which accompanies this distribution.
+	
+	Author: Christoff Bürger
+*/
+
+package pmchess.logic;
+
+import jdk.jfr.*;
+
+/*
+	Java Flight Recorder event of a move selection by 'Search', from its start (for asynchronous
+	searches, the creation of their search task) to its end. Like all pmChess events, it is
+	disabled by default and must be enabled for recordings, e.g., via
+	'-XX:StartFlightRecording:+pmchess.Search#enabled=true,+pmchess.Status#enabled=true'.
+*/
+@Name("pmchess.Search")
+@Label("Search")
+@Category({"pmChess", "Search"})
+@Description("Move selection of a computer player.")
+@Enabled(false)
+@StackTrace(false)
+public final class SearchEvent extends Event
+{
+	@Label("Depth")
+	protected int depth;
+	
+	@Label("Nodes")
+	@Description("Executed moves; 0 unless search statistics are enabled.")
+	protected long nodes;
+	
+	@Label("Move")
+	@Description("Selected move in coordinate notation (e.g., 'e2e4' or 'e7e8q').")
+	protected String move;
+	
+	protected void set(final int depth, final SearchStatistics statistics, final int move)
+	{
+		this.depth = depth;
+		this.nodes = statistics != null ? statistics.nodes() : 0;
+		this.move = move == 0 ? "none" : Move.coordinate_notation(move);
+	}
+}
@@ -0,0 +1,282 @@
+/*
+	This program and the accompanying materials are made available under the terms of the MIT
+	license (X11 license) which accompanies this distribution.
+	
+	Author: Christoff Bürger
+*/
+
+package pmchess.logic;
+
+import java.util.*;
+
+import java.util.concurrent.locks.*;
+
+/*
+	Runs search tasks (e.g., the computer's move, analysis, pondering or hints) on a fixed number
+	of worker threads. Tasks are interleaved round-robin in time slices, such that any number of
+	concurrent tasks never uses more threads than the scheduler has workers. Exceptions of
+	tasks do not stop workers: they are reported to the uncaught exception handler of the
+	worker thread and the failing task is stopped and its owner informed (cf.
+	'SearchTask.Status.Failed').
+*/
+public final class SearchScheduler
+{
+	private static final long time_slice = 20000000l; // 20ms
+	
+	private final ReentrantLock lock =
+		new ReentrantLock();
+	private final Condition tasks_waiting =
+		lock.newCondition();
+	private final ArrayDeque<SearchTask> waiting_tasks =
+		new ArrayDeque<>();
+	private boolean is_shutdown = false;
+	
+	/*
+		Scheduler with a worker for every processor but one (left for the GUI).
+	*/
+	public SearchScheduler()
+	{
+		this(Runtime.getRuntime().availableProcessors() - 1);
+	}
+	
+	public SearchScheduler(final int workers)
+	{
+		for (var i = Math.max(workers, 1); i > 0; i--)
+		{
+			final var worker =
+				new Thread(this::work, "pmChess search worker " + i);
+			worker.setDaemon(true);
+			worker.start();
+		}
+	}
+	
+	/*
+		Schedule the given task, unless it was cancelled or paused before (then it is just
+		owned by the scheduler, as cancelled respectively paused task).
+	*/
+	public void submit(final SearchTask task)
+	{
+		lock.lock();
+		try
+		{
+			synchronized (task)
+			{
+				if (task.scheduler != null || is_shutdown)
+				{
+					throw new IllegalStateException("ERROR: Search task cannot be scheduled.");
+				}
+				task.scheduler = this;
+				if (task.cancel_requested)
+				{
+					task.status = SearchTask.Status.Cancelled;
+					return;
+				}
+				if (task.pause_requested)
+				{
+					task.pause_requested = false;
+					task.status = SearchTask.Status.Paused;
+					return;
+				}
+				task.status = SearchTask.Status.Waiting;
+			}
+			waiting_tasks.addLast(task);
+			tasks_waiting.signal();
+		}
+		finally
+		{
+			lock.unlock();
+		}
+	}
+	
+	/*
+		Stop all workers after their current time slice; unfinished tasks are cancelled.
+	*/
+	public void shutdown()
+	{
+		lock.lock();
+		try
+		{
+			is_shutdown = true;
+			for (final var task : waiting_tasks)
+			{
+				task.status = SearchTask.Status.Cancelled;
+			}
+			waiting_tasks.clear();
+			tasks_waiting.signalAll();
+		}
+		finally
+		{
+			lock.unlock();
+		}
+	}
+	
+	protected SearchTask.Status status(final SearchTask task)
+	{
+		lock.lock();
+		try
+		{
+			return task.status;
+		}
+		finally
+		{
+			lock.unlock();
+		}
+	}
+	
+	protected void pause(final SearchTask task)
+	{
+		lock.lock();
+		try
+		{
+			switch (task.status)
+			{
+			case Waiting:
+				waiting_tasks.remove(task);
+				task.status = SearchTask.Status.Paused;
+				break;
+			case Running:
+				task.pause_requested = true;
+				break;
+			}
+		}
+		finally
+		{
+			lock.unlock();
+		}
+	}
+	
+	protected void resume(final SearchTask task)
+	{
+		lock.lock();
+		try
+		{
+			task.pause_requested = false;
+			if (task.status == SearchTask.Status.Paused && !is_shutdown)
+			{
+				task.status = SearchTask.Status.Waiting;
+				waiting_tasks.addLast(task);
+				tasks_waiting.signal();
+			}
+		}
+		finally
+		{
+			lock.unlock();
+		}
+	}
+	
+	protected void cancel(final SearchTask task)
+	{
+		lock.lock();
+		try
+		{
+			switch (task.status)
+			{
+			case Waiting:
+				waiting_tasks.remove(task);
+				task.status = SearchTask.Status.Cancelled;
+				break;
+			case Paused:
+				task.status = SearchTask.Status.Cancelled;
+				break;
+			case Running:
+				task.cancel_requested = true;
+				break;
+			}
+		}
+		finally
+		{
+			lock.unlock();
+		}
+	}
+	
+	private void work()
+	{
+		while (true)
+		{
+			final SearchTask task;
+			lock.lock();
+			try
+			{
+				while (waiting_tasks.isEmpty() && !is_shutdown)
+				{
+					tasks_waiting.awaitUninterruptibly();
+				}
+				if (is_shutdown)
+				{
+					return;
+				}
+				task = waiting_tasks.pollFirst();
+				task.status = SearchTask.Status.Running;
+			}
+			finally
+			{
+				lock.unlock();
+			}
+			
+			var done = true;
+			RuntimeException failure = null;
+			try
+			{
+				done = task.run(time_slice);
+			}
+			catch (RuntimeException exception)
+			{
+				failure = exception;
+				report(exception);
+			}
+			
+			lock.lock();
+			try
+			{
+				if (task.cancel_requested || is_shutdown)
+				{
+					task.status = SearchTask.Status.Cancelled;
+					continue;
+				}
+				if (failure != null)
+				{
+					task.failure = failure;
+					task.status = SearchTask.Status.Failed;
+				}
+				else if (!done)
+				{
+					if (task.pause_requested)
+					{
+						task.pause_requested = false;
+						task.status = SearchTask.Status.Paused;
+					}
+					else
+					{ // Round-robin: continue with the longest waiting task.
+						task.status = SearchTask.Status.Waiting;
+						waiting_tasks.addLast(task);
+						tasks_waiting.signal();
+					}
+					continue;
+				}
+				else
+				{
+					task.status = SearchTask.Status.Finished;
+				}
+			}
+			finally
+			{
+				lock.unlock();
+			}
+			try
+			{
+				task.notify_finished();
+			}
+			catch (RuntimeException exception)
+			{
+				report(exception);
+			}
+		}
+	}
+	
+	private static void report(final RuntimeException exception)
+	{
+		final var worker =
+			Thread.currentThread();
+		worker.getUncaughtExceptionHandler().uncaughtException(worker, exception);
+	}
+}
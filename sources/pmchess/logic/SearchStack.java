@@ -0,0 +1,276 @@
+/*
+	This program and the accompanying materials are made available under the terms of the MIT
+	license (X11 license) which accompanies this distribution.
+	
+	Author: Christoff Bürger
+*/
+
+package pmchess.logic;
+
+/*
+	Alpha-beta negamax search without recursion. The search tree is walked depth-first by
+	executing and undoing the moves of the board's move frames; the state of each ply (the root
+	being ply 0) is kept in arrays allocated once per search, such that no allocations happen
+	while searching. Since the whole state of a search is given by these arrays and the board,
+	a search can be interrupted and continued at any ply.
+	
+	Mates and tablebase wins and losses are scored relative to the root: the more plies from the
+	root, the less they score for the winner (cf. 'Search.mate_plies').
+*/
+public final class SearchStack
+{
+	private final Board board;
+	private final Evaluator evaluator;
+	private final Tablebase tablebase; // Probed instead of searching covered positions; or null.
+	
+	/*
+		Ply of the positions that are evaluated instead of searched further:
+	*/
+	private final int leaf_ply;
+	
+	/*
+		Root moves searched: every 'root_parts'-th, starting with the 'root_part'-th (cf. the
+		constructor):
+	*/
+	private final int root_parts;
+	
+	/*
+		Search state of each ply, indexed by ply:
+	*/
+	private final int[] move_index; // Index of the ply's current move in its move frame.
+	private final int[] alpha;
+	private final int[] beta;
+	private final int[] result; // Score of the ply's last searched move.
+	private final boolean[] any_move_done;
+	
+	private int ply = 0;
+	private int best_move = 0;
+	private boolean finished = false;
+	
+	/*
+		Statistics of the search, if enabled (cf. 'SearchStatistics.enabled'):
+	*/
+	private final SearchStatistics statistics;
+	
+	/*
+		Prepare a search of the current position of the given board, whereby the root moves are
+		searched 'depth' plies deep before evaluating. The board is used by the search (i.e.,
+		changed while searching) and must not be used otherwise until the search finished.
+		Positions covered by the given tablebase (if not 'null') are scored by it instead of
+		being searched further.
+	*/
+	protected SearchStack(
+		  final Board board
+		, final Evaluator evaluator
+		, final Tablebase tablebase
+		, final int depth)
+	{
+		this(board, evaluator, tablebase, depth, 0, 1);
+	}
+	
+	/*
+		Prepare a search of just a part of the root moves, such that the root moves can be split
+		among 'root_parts' concurrent searches of forks of the board: the search of part
+		'root_part' (starting with 0) searches every 'root_parts'-th root move, starting with the
+		'root_part'-th. The best move is the best move of the part with the best score.
+	*/
+	protected SearchStack(
+		  final Board board
+		, final Evaluator evaluator
+		, final Tablebase tablebase
+		, final int depth
+		, final int root_part
+		, final int root_parts)
+	{
+		this.board = board;
+		this.evaluator = evaluator;
+		this.tablebase = tablebase;
+		leaf_ply = depth + 1;
+		this.root_parts = root_parts;
+		move_index = new int[leaf_ply];
+		alpha = new int[leaf_ply];
+		beta = new int[leaf_ply];
+		result = new int[leaf_ply];
+		any_move_done = new boolean[leaf_ply];
+		
+		move_index[0] = board.moves_possible() + root_part;
+		alpha[0] = Search.min_score;
+		beta[0] = 2 * Search.max_score;
+		result[0] = Search.min_score;
+		any_move_done[0] = false;
+		
+		statistics = SearchStatistics.enabled
+			? new SearchStatistics()
+			: null;
+	}
+	
+	/*
+		Continue the search for at most the given number of steps, each step executing one move
+		(or trying to, in case the move threatens the own king). Returns whether all root moves
+		are searched; otherwise, the search can be continued later with another call.
+	*/
+	protected boolean search(final long steps)
+	{
+		if (SearchStatistics.enabled)
+		{ // Count the cache probes of the evaluations of this thread for this search:
+			SearchStatistics.current.set(statistics);
+		}
+		for (var step = steps; !finished && step > 0; step--)
+		{
+			final var move =
+				board.moves_possible(move_index[ply]);
+			if (move == 0)
+			{ // All moves of the ply searched:
+				if (ply == 0)
+				{
+					finished = true;
+					break;
+				}
+				backtrack(any_move_done[ply]
+					? alpha[ply]
+					: (board.check(board.player())
+						? Search.min_score + ply // current player lost
+						: evaluator.score( // stalemate
+							  board
+							, board.player()
+							, alpha[ply]
+							, beta[ply])));
+				continue;
+			}
+			if (!board.execute(move))
+			{ // Skip moves threatening the own king:
+				if (SearchStatistics.enabled)
+				{
+					statistics.illegal_moves++;
+				}
+				move_index[ply] += ply == 0 ? root_parts : 1;
+				if (ply > 0 && result[ply] >= beta[ply])
+				{
+					backtrack(beta[ply]);
+				}
+				continue;
+			}
+			if (SearchStatistics.enabled)
+			{
+				statistics.nodes++;
+			}
+			ply++;
+			if (tablebase != null)
+			{ // Score positions covered by the tablebase without searching them:
+				final var score =
+					tablebase.score(board);
+				if (score != Tablebase.unknown)
+				{
+					backtrack(score > 0 ? score - ply : (score < 0 ? score + ply : 0));
+					continue;
+				}
+			}
+			if (ply == leaf_ply)
+			{ // Evaluate leaf (whose window is the negated window of its predecessor ply):
+				if (SearchStatistics.enabled)
+				{
+					statistics.leaves++;
+				}
+				backtrack(evaluator.score(
+					  board
+					, board.player()
+					, -beta[ply - 1]
+					, -alpha[ply - 1]));
+				continue;
+			}
+			// Proceed depth-first search:
+			move_index[ply] = board.moves_possible();
+			alpha[ply] = -beta[ply - 1];
+			beta[ply] = -alpha[ply - 1];
+			result[ply] = Search.min_score;
+			any_move_done[ply] = false;
+		}
+		if (SearchStatistics.enabled)
+		{
+			SearchStatistics.current.remove();
+		}
+		return finished;
+	}
+	
+	/*
+		Backtrack from the current ply, whose search resulted in the given score, and continue
+		backtracking as long as the score propagated to the previous ply causes a beta cutoff.
+	*/
+	private void backtrack(final int score)
+	{
+		var ply_score = score;
+		while (true)
+		{
+			final var move =
+				board.undo();
+			ply--;
+			ply_score = -ply_score;
+			result[ply] = ply_score;
+			final var first_move =
+				!any_move_done[ply];
+			any_move_done[ply] = true;
+			if (ply == 0)
+			{ // Pruning doesn't make any sense at the root.
+				move_index[0] += root_parts;
+				if (ply_score > alpha[0])
+				{
+					alpha[0] = ply_score;
+					if (ply_score > Search.min_score + leaf_ply)
+					{ // Moves getting mated within the searched plies are no best moves:
+						best_move = move;
+					}
+				}
+				return;
+			}
+			move_index[ply]++;
+			if (ply_score >= beta[ply])
+			{
+				if (SearchStatistics.enabled)
+				{
+					statistics.beta_cutoffs++;
+					if (first_move)
+					{
+						statistics.first_move_cutoffs++;
+					}
+				}
+				ply_score = beta[ply];
+				continue;
+			}
+			if (ply_score > alpha[ply])
+			{
+				alpha[ply] = ply_score;
+			}
+			return;
+		}
+	}
+	
+	protected boolean finished()
+	{
+		return finished;
+	}
+	
+	/*
+		Statistics of the search or 'null' if statistics are not enabled.
+	*/
+	protected SearchStatistics statistics()
+	{
+		return statistics;
+	}
+	
+	/*
+		Best root move found so far or 0 if there is none (i.e., all root moves get mated within
+		the searched plies or there is no valid move at all).
+	*/
+	protected int best_move()
+	{
+		return best_move;
+	}
+	
+	/*
+		Score of the best root move found so far.
+	*/
+	protected int best_score()
+	{
+		return alpha[0];
+	}
+}
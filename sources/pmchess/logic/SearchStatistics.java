@@ -0,0 +1,186 @@
+/*
+	This program and the accompanying materials are made available under the terms of the MIT
+	license (X11 license) which accompanies this distribution.
+	
+	Author: Christoff Bürger
+*/
+
+package pmchess.logic;
+
+import java.util.*;
+
+/*
+	Counters of a search, to diagnose its costs (e.g., why a search took its whole budget). Each
+	search counts into its own statistics, which therefore are just plain fields; statistics of
+	concurrent searches are aggregated by 'add' once the searches finished.
+	
+	Statistics are collected only if the system property 'pmchess.search.statistics' is 'true'
+	(e.g., 'java -Dpmchess.search.statistics=true -jar pmChess.jar --uci'); then, the UCI
+	engine reports the statistics of each search as 'info string' and the statistics of the
+	last move selection are available by 'Search.statistics'. Otherwise, searches have no
+	statistics and, since 'enabled' is constant, the just-in-time compiler removes all counting
+	from the search loop.
+*/
+public final class SearchStatistics
+{
+	public static final boolean enabled =
+		Boolean.getBoolean("pmchess.search.statistics");
+	
+	/*
+		Statistics of the search the current thread is running, if any and enabled; caches count
+		their probes into it, such that caches shared by concurrent searches have no shared
+		counters (cf. 'SearchStack.search'):
+	*/
+	protected static final ThreadLocal<SearchStatistics> current =
+		new ThreadLocal<>();
+	
+	protected long nodes = 0; // Executed moves.
+	protected long leaves = 0; // Evaluated positions.
+	protected long illegal_moves = 0; // Moves rejected by 'Board.execute' (own king threatened).
+	protected long beta_cutoffs = 0;
+	protected long first_move_cutoffs = 0; // Beta cutoffs by the first move searched.
+	protected long cache_probes = 0; // Evaluation cache probes (cf. 'EvaluationCache').
+	protected long cache_hits = 0;
+	protected long pawn_probes = 0; // Pawn hash table probes (cf. 'PawnHashTable').
+	protected long pawn_hits = 0;
+	
+	/*
+		Duration in nanoseconds of the search iteration of each depth, indexed by depth; 0 for
+		depths not searched:
+	*/
+	private long[] iteration_durations =
+		new long[0];
+	
+	public long nodes()
+	{
+		return nodes;
+	}
+	
+	public long leaves()
+	{
+		return leaves;
+	}
+	
+	public long illegal_moves()
+	{
+		return illegal_moves;
+	}
+	
+	public long beta_cutoffs()
+	{
+		return beta_cutoffs;
+	}
+	
+	/*
+		Ratio of beta cutoffs caused by the first move searched, between 0 and 1 (the closer to
+		1, the better the move ordering).
+	*/
+	public double first_move_cutoff_rate()
+	{
+		return beta_cutoffs == 0 ? 0 : (double) first_move_cutoffs / beta_cutoffs;
+	}
+	
+	/*
+		Evaluation cache probes and hits of searches; exact even if the cache is shared by
+		concurrent searches, since each search counts its own probes.
+	*/
+	public long cache_probes()
+	{
+		return cache_probes;
+	}
+	
+	public long cache_hits()
+	{
+		return cache_hits;
+	}
+	
+	public double cache_hit_rate()
+	{
+		return cache_probes == 0 ? 0 : (double) cache_hits / cache_probes;
+	}
+	
+	public long pawn_probes()
+	{
+		return pawn_probes;
+	}
+	
+	public long pawn_hits()
+	{
+		return pawn_hits;
+	}
+	
+	public double pawn_hit_rate()
+	{
+		return pawn_probes == 0 ? 0 : (double) pawn_hits / pawn_probes;
+	}
+	
+	/*
+		Duration in nanoseconds of the search iteration of the given depth or 0 if the depth was
+		not searched.
+	*/
+	public long iteration_duration(final int depth)
+	{
+		return depth >= 0 && depth < iteration_durations.length ? iteration_durations[depth] : 0;
+	}
+	
+	protected void iteration(final int depth, final long duration)
+	{
+		if (depth >= iteration_durations.length)
+		{
+			iteration_durations = Arrays.copyOf(iteration_durations, depth + 1);
+		}
+		iteration_durations[depth] += duration;
+	}
+	
+	/*
+		Add the counters of the given statistics to this statistics.
+	*/
+	public void add(final SearchStatistics statistics)
+	{
+		nodes += statistics.nodes;
+		leaves += statistics.leaves;
+		illegal_moves += statistics.illegal_moves;
+		beta_cutoffs += statistics.beta_cutoffs;
+		first_move_cutoffs += statistics.first_move_cutoffs;
+		cache_probes += statistics.cache_probes;
+		cache_hits += statistics.cache_hits;
+		pawn_probes += statistics.pawn_probes;
+		pawn_hits += statistics.pawn_hits;
+		for (var depth = 0; depth < statistics.iteration_durations.length; depth++)
+		{
+			if (statistics.iteration_durations[depth] != 0)
+			{
+				iteration(depth, statistics.iteration_durations[depth]);
+			}
+		}
+	}
+	
+	@Override public String toString()
+	{
+		final var text =
+			new StringBuilder();
+		text.append(String.format(
+			  "nodes %d, leaves %d, illegal moves %d, beta cutoffs %d (first move %.1f%%)"
+				+ ", cache probes %d (hits %.1f%%), pawn probes %d (hits %.1f%%)"
+			, nodes
+			, leaves
+			, illegal_moves
+			, beta_cutoffs
+			, 100 * first_move_cutoff_rate()
+			, cache_probes
+			, 100 * cache_hit_rate()
+			, pawn_probes
+			, 100 * pawn_hit_rate()));
+		for (var depth = 0; depth < iteration_durations.length; depth++)
+		{
+			if (iteration_durations[depth] != 0)
+			{
+				text.append(String.format(
+					  ", depth %d %.3fs"
+					, depth
+					, iteration_durations[depth] / 1000000000.0));
+			}
+		}
+		return text.toString();
+	}
+}
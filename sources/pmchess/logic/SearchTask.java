@@ -0,0 +1,200 @@
+/*
+	This program and the accompanying materials are made available under the terms of the MIT
+	license (X11 license) which accompanies this distribution.
+	
+	Author: Christoff Bürger
+*/
+
+package pmchess.logic;
+
+import java.util.function.*;
+
+/*
+	Search run time-sliced by a 'SearchScheduler'. Between its time slices, the search is
+	suspended at its exact position in the search tree; it can be paused, resumed or cancelled.
+	All state changes are synchronized by the scheduler the task is submitted to; pausing or
+	cancelling a task before it is submitted takes effect when it is submitted.
+*/
+public final class SearchTask
+{
+	public static enum Status
+	{
+		  Created
+		, Waiting // Waiting for its next time slice.
+		, Running
+		, Paused
+		, Finished
+		, Failed // Search stopped by an exception (cf. 'failure').
+		, Cancelled
+	}
+	
+	private final SearchStack search_stack;
+	private final Consumer<SearchTask> finished;
+	
+	/* Set once, when submitted; state changes before are synchronized by the task: */
+	protected volatile SearchScheduler scheduler = null;
+	protected Status status = Status.Created;
+	protected boolean pause_requested = false;
+	protected boolean cancel_requested = false;
+	protected volatile RuntimeException failure = null;
+	
+	private volatile long duration = 0; // Sum of all time slices.
+	private volatile int best_move = 0;
+	private volatile int best_score = Search.min_score;
+	
+	protected SearchTask(
+		  final SearchStack search_stack
+		, final Consumer<SearchTask> finished)
+	{
+		this.search_stack = search_stack;
+		this.finished = finished;
+	}
+	
+	/*
+		Task of a move selected without any search (e.g., an opening book move), which just
+		finishes when run.
+	*/
+	protected SearchTask(final int move, final Consumer<SearchTask> finished)
+	{
+		this.search_stack = null;
+		this.finished = finished;
+		this.best_move = move;
+		this.best_score = 0;
+	}
+	
+	/*
+		Run the task for the given time, measured in nanoseconds. Returns whether the search
+		finished. Only to be called by the scheduler thread owning the task for the time slice.
+	*/
+	protected boolean run(final long time_slice)
+	{
+		if (search_stack == null)
+		{
+			return true;
+		}
+		final var start_time =
+			System.nanoTime();
+		var end_time =
+			start_time;
+		var done = false;
+		while (!done && end_time - start_time < time_slice)
+		{
+			done = search_stack.search(4096);
+			end_time = System.nanoTime();
+		}
+		duration += end_time - start_time;
+		best_score = search_stack.best_score();
+		best_move = search_stack.best_move();
+		return done;
+	}
+	
+	/*
+		Inform the owner of the task that it finished or failed. Only to be called once by the
+		scheduler.
+	*/
+	protected void notify_finished()
+	{
+		finished.accept(this);
+	}
+	
+	/*
+		Time the task was running so far, in nanoseconds; time spent waiting for time slices is
+		not included.
+	*/
+	public long duration()
+	{
+		return duration;
+	}
+	
+	/*
+		Statistics of the search or 'null' if statistics are not enabled (cf.
+		'SearchStatistics.enabled'); only complete once the task finished.
+	*/
+	public SearchStatistics statistics()
+	{
+		return search_stack == null ? null : search_stack.statistics();
+	}
+	
+	/*
+		Exception that stopped the search of a failed task; 'null' if the task did not fail.
+	*/
+	public RuntimeException failure()
+	{
+		return failure;
+	}
+	
+	/*
+		Best move found so far (the final result once the task finished; the best move of its
+		last complete time slice if it failed).
+	*/
+	public int best_move()
+	{
+		return best_move;
+	}
+	
+	/*
+		Score of the best move found so far (cf. 'HandcraftedEvaluator.centipawns').
+	*/
+	public int best_score()
+	{
+		return best_score;
+	}
+	
+	public Status status()
+	{
+		synchronized (this)
+		{
+			if (scheduler == null)
+			{
+				return status;
+			}
+		}
+		return scheduler.status(this);
+	}
+	
+	/*
+		Suspend the task after its current time slice until resumed.
+	*/
+	public void pause()
+	{
+		synchronized (this)
+		{
+			if (scheduler == null)
+			{
+				pause_requested = true;
+				return;
+			}
+		}
+		scheduler.pause(this);
+	}
+	
+	public void resume()
+	{
+		synchronized (this)
+		{
+			if (scheduler == null)
+			{
+				pause_requested = false;
+				return;
+			}
+		}
+		scheduler.resume(this);
+	}
+	
+	/*
+		Stop the task after its current time slice without informing its owner.
+	*/
+	public void cancel()
+	{
+		synchronized (this)
+		{
+			if (scheduler == null)
+			{
+				cancel_requested = true;
+				status = Status.Cancelled;
+				return;
+			}
+		}
+		scheduler.cancel(this);
+	}
+}
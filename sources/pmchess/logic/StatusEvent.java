@@ -0,0 +1,29 @@
+/*
+	This program and the accompanying materials are made available under the terms of the MIT
+	license (X11 license) which accompanies this distribution.
+	
+	Author: Christoff Bürger
+*/
+
+package pmchess.logic;
+
+import jdk.jfr.*;
+
+/*
+	Java Flight Recorder event of a game status computation ('Board.status()'); disabled by
+	default (cf. 'SearchEvent').
+*/
+@Name("pmchess.Status")
+@Label("Game Status")
+@Category({"pmChess", "Board"})
+@Description("Game status computation of a board.")
+@Enabled(false)
+@StackTrace(false)
+public final class StatusEvent extends Event
+{
+	@Label("Turn")
+	protected int turn;
+	
+	@Label("Status")
+	protected String status;
+}
@@ -0,0 +1,1029 @@
+/*
+	This program and the accompanying materials are made available under the terms of the MIT
+	license (X11 license) which accompanies this distribution.
+	
+	Author: Christoff Bürger
+*/
+
+package pmchess.logic;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.*;
+
+import java.io.*;
+
+import java.lang.invoke.*;
+
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.file.*;
+
+/*
+	Endgame tablebases: the distance to mate of all positions of endgames with up to four
+	figures (the kings and up to two other figures), such that endgames are played perfectly
+	without searching them (cf. 'Search.set_tablebase').
+	
+	Each endgame has a table file named by its figures, e.g., 'KQvKR.tablebase' for a king and
+	queen against a king and rook. Only endgames with the stronger player white have tables;
+	the others are probed with the colours swapped. A table file starts with the magic number
+	'pmChessT' and the number of bits of each entry (int), followed by the bit-packed entries
+	(big-endian) of all positions: 0 for draws (and invalid positions), otherwise the number of
+	plies to mate plus one; odd numbers of plies are wins of the player moving, even ones its
+	losses. Positions are indexed by the player moving, the square of the white king, the
+	square of the black king and the squares of the other figures; by symmetry, the white king
+	is always on the files a-d and, in endgames without pawns, the ranks 1-4.
+	
+	Tables are generated by retrograde analysis ('generate') following the rules of 'Board',
+	except for castlings and en passant captures, for which tables are not probed: the
+	positions without moves are mates or stalemates; then, the predecessors of the positions
+	resolved at a distance of n plies are resolved at a distance of n + 1 plies, until no more
+	positions are resolved; the remaining positions are draws. Captures and promotions leave the
+	endgame; they are resolved by the tables of the smaller endgames, generated before.
+*/
+public final class Tablebase
+{
+	/*
+		Score of positions not covered by the tablebase (cf. 'score').
+	*/
+	protected static final int unknown = Integer.MIN_VALUE;
+	
+	private static final long magic = 0x706D436865737354l; // 'pmChessT'
+	private static final int figures_max = 4;
+	private static final int draw = 0xFE; // Entry of resolved draws while generating.
+	private static final int invalid = 0xFF; // Entry of invalid positions while generating.
+	private static final VarHandle bytes =
+		MethodHandles.arrayElementVarHandle(byte[].class);
+	
+	/*
+		Figures other than kings are numbered 1-5 for white pawns, rooks, knights, bishops and
+		queens and 6-10 for the black ones (their 'Figure.key' minus one), 0 for no figure. An
+		endgame ('material') is numbered 'figure_1 * 11 + figure_2' of its two other figures,
+		with 'figure_1 >= figure_2'. The values are the material balance (white positive).
+	*/
+	private static final int[] values =
+		{0, 1, 5, 3, 3, 9, -1, -5, -3, -3, -9};
+	
+	private final Table[] tables =
+		new Table[11 * 11];
+	private int figures = 0; // Maximum number of figures of the tables.
+	
+	/*
+		Table of an endgame, memory-mapped.
+	*/
+	private static final class Table
+	{
+		private final MappedByteBuffer entries;
+		private final int bits;
+		private final boolean pawns;
+		
+		private Table(final MappedByteBuffer entries, final boolean pawns)
+		{
+			this.entries = entries;
+			this.bits = entries.getInt(8);
+			this.pawns = pawns;
+		}
+		
+		private int entry(final int index)
+		{
+			final var bit =
+				(long) index * bits;
+			final var packed =
+				Short.toUnsignedInt(entries.getShort(12 + (int) (bit >>> 3)));
+			return (packed >>> (16 - (int) (bit & 7) - bits)) & ((1 << bits) - 1);
+		}
+	}
+	
+	private Tablebase()
+	{
+	}
+	
+	/*
+		Open the tables of the given directory. Throws an 'IOException' if the directory has no
+		tables or any of them cannot be read or is invalid.
+	*/
+	public static Tablebase open(final Path directory) throws IOException
+	{
+		final var tablebase =
+			new Tablebase();
+		for (final var material : materials())
+		{
+			if (Files.exists(file(directory, material)))
+			{
+				tablebase.load(directory, material);
+			}
+		}
+		if (tablebase.figures == 0)
+		{
+			throw new IOException("ERROR: No tablebases in " + directory + ".");
+		}
+		return tablebase;
+	}
+	
+	private void load(final Path directory, final int material) throws IOException
+	{
+		final var file =
+			file(directory, material);
+		try (final var channel = FileChannel.open(file, StandardOpenOption.READ))
+		{
+			final var size =
+				size(material);
+			final var entries =
+				channel.size() < 12 || channel.size() > Integer.MAX_VALUE
+					? null
+					: channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			if (entries == null || entries.getLong(0) != magic
+				|| entries.getInt(8) < 1 || entries.getInt(8) > 8
+				|| entries.capacity() < 13 + ((long) size * entries.getInt(8) + 7) / 8)
+			{
+				throw new IOException("ERROR: Invalid tablebase " + file + ".");
+			}
+			tables[material] = new Table(entries, pawns(material));
+			figures = Math.max(figures, figures(material));
+		}
+	}
+	
+	/*
+		Best move of the given board's current position, i.e., the fastest mate if the position
+		is won, a drawing move if it is drawn and the slowest mate if it is lost, or 0 if the
+		position is not covered by the tablebase or there is no move. Moves to positions not
+		covered (i.e., allowing en passant captures, which the tables do not consider) are
+		skipped.
+	*/
+	public int move(final Board board)
+	{
+		if (code(board) < 0)
+		{
+			return 0;
+		}
+		var best_move = 0;
+		var best_value = Integer.MIN_VALUE;
+		for (final var move : board.legal_moves())
+		{
+			board.execute(move);
+			final var code =
+				code(board);
+			board.undo();
+			if (code < 0)
+			{
+				continue;
+			}
+			final var value =
+				code == 0 ? 0
+				: code % 2 == 1 ? 1000 - code // Opponent loses; the faster the better.
+				: code - 1000; // Opponent wins; the slower the better.
+			if (best_move == 0 || value > best_value)
+			{
+				best_move = move;
+				best_value = value;
+			}
+		}
+		return best_move;
+	}
+	
+	/*
+		Score of the given board's current position for the player moving (cf.
+		'Evaluator.score'), 'unknown' if the position is not covered by the tablebase. Wins and
+		losses score less than mates found by searches, the faster the better.
+	*/
+	protected int score(final Board board)
+	{
+		final var code =
+			code(board);
+		if (code <= 0)
+		{
+			return code == 0 ? 0 : unknown;
+		}
+		final var plies =
+			code - 1;
+		return plies % 2 == 1
+			? Search.max_score / 2 - plies
+			: plies - Search.max_score / 2;
+	}
+	
+	/*
+		Entry of the given board's current position or -1 if it is not covered by the
+		tablebase (too many figures, castlings allowed, en passant captures possible or no
+		table of the endgame).
+	*/
+	private int code(final Board board)
+	{
+		if (Long.bitCount(board.occupied(true) | board.occupied(false)) > figures
+			|| board.castling_allowed(true, true) || board.castling_allowed(false, true)
+			|| board.castling_allowed(true, false) || board.castling_allowed(false, false)
+			|| en_passant(board))
+		{
+			return -1;
+		}
+		var figure_1 = 0;
+		var square_1 = -1;
+		var figure_2 = 0;
+		var square_2 = -1;
+		for (var key = 1; key <= 11; key++)
+		{
+			if (key == 6)
+			{
+				continue;
+			}
+			for (var squares = board.squares(Figure.figures[key]);
+				squares != 0;
+				squares &= squares - 1)
+			{
+				if (figure_1 == 0)
+				{
+					figure_1 = figure(key);
+					square_1 = Long.numberOfTrailingZeros(squares);
+				}
+				else
+				{
+					figure_2 = figure(key);
+					square_2 = Long.numberOfTrailingZeros(squares);
+				}
+			}
+		}
+		return code(
+			  board.player()
+			, Long.numberOfTrailingZeros(board.squares(Figure.king(true)))
+			, Long.numberOfTrailingZeros(board.squares(Figure.king(false)))
+			, figure_1
+			, square_1
+			, figure_2
+			, square_2);
+	}
+	
+	/*
+		Whether the player moving can capture en passant, i.e., has a pawn next to an opponent
+		pawn that just advanced two squares (regardless of threatening its own king; like for
+		'Board.hash').
+	*/
+	private static boolean en_passant(final Board board)
+	{
+		final var x =
+			board.en_passant_file();
+		if (x == -1)
+		{
+			return false;
+		}
+		final var y =
+			board.player() ? 4 : 3;
+		final var pawn =
+			Figure.pawn(board.player());
+		return (x > 0 && board.figure(x - 1, y) == pawn)
+			|| (x < 7 && board.figure(x + 1, y) == pawn);
+	}
+	
+	/*
+		Entry of the given position (squares 'x + 8 * y' and -1 for no figure) or -1 if there is
+		no table for its endgame.
+	*/
+	private int code(
+		  final boolean player
+		, final int white_king
+		, final int black_king
+		, final int figure_1
+		, final int square_1
+		, final int figure_2
+		, final int square_2)
+	{
+		if (figure_1 < figure_2)
+		{
+			return code(
+				  player
+				, white_king
+				, black_king
+				, figure_2
+				, square_2
+				, figure_1
+				, square_1);
+		}
+		if (figure_1 == 0)
+		{
+			return 0; // Just the kings: draw.
+		}
+		final var material =
+			figure_1 * 11 + figure_2;
+		if (!canonical(material))
+		{ // Probe the endgame with the colours swapped (the ranks mirrored):
+			return code(
+				  !player
+				, black_king ^ 56
+				, white_king ^ 56
+				, swap(figure_1)
+				, square_1 ^ 56
+				, swap(figure_2)
+				, figure_2 == 0 ? -1 : square_2 ^ 56);
+		}
+		final var table =
+			tables[material];
+		return table == null
+			? -1
+			: table.entry(index(
+				  player
+				, white_king
+				, black_king
+				, square_1
+				, square_2
+				, table.pawns));
+	}
+	
+	/*
+		Index of the given position in the table of its endgame (cf. 'Tablebase').
+	*/
+	private static int index(
+		  final boolean player
+		, final int white_king
+		, final int black_king
+		, final int square_1
+		, final int square_2
+		, final boolean pawns)
+	{
+		final var mirror =
+			((white_king & 7) > 3 ? 7 : 0) | (!pawns && (white_king >> 3) > 3 ? 56 : 0);
+		final var king =
+			white_king ^ mirror;
+		var index =
+			((player ? 0 : 1) * (pawns ? 32 : 16) + (king & 3) + 4 * (king >> 3)) * 64
+			+ (black_king ^ mirror);
+		if (square_1 >= 0)
+		{
+			index = index * 64 + (square_1 ^ mirror);
+		}
+		if (square_2 >= 0)
+		{
+			index = index * 64 + (square_2 ^ mirror);
+		}
+		return index;
+	}
+	
+	private static int size(final int material)
+	{
+		return 2 * (pawns(material) ? 32 : 16) << (6 * (figures(material) - 1));
+	}
+	
+	private static int figure(final int key)
+	{
+		return key < 6 ? key : key - 1;
+	}
+	
+	private static int key(final int figure)
+	{
+		return figure < 6 ? figure : figure + 1;
+	}
+	
+	private static int swap(final int figure)
+	{
+		return figure == 0 ? 0 : figure < 6 ? figure + 5 : figure - 5;
+	}
+	
+	private static int figures(final int material)
+	{
+		return 2 + (material / 11 == 0 ? 0 : 1) + (material % 11 == 0 ? 0 : 1);
+	}
+	
+	private static boolean pawns(final int material)
+	{
+		return material / 11 == 1 || material / 11 == 6
+			|| material % 11 == 1 || material % 11 == 6;
+	}
+	
+	/*
+		Whether the tables of the given endgame are the ones with colours as given, i.e., white
+		is the stronger player (or none is and it has the smaller number).
+	*/
+	private static boolean canonical(final int material)
+	{
+		final var figure_1 =
+			swap(material / 11);
+		final var figure_2 =
+			swap(material % 11);
+		final var swapped =
+			Math.max(figure_1, figure_2) * 11 + Math.min(figure_1, figure_2);
+		final var balance =
+			values[material / 11] + values[material % 11];
+		return balance > 0 || (balance == 0 && material <= swapped);
+	}
+	
+	/*
+		All endgames with tables, ordered such that the endgames left by captures (fewer
+		figures) and promotions (fewer pawns) come first.
+	*/
+	private static List<Integer> materials()
+	{
+		final var materials =
+			new ArrayList<Integer>();
+		for (var material = 1; material < 11 * 11; material++)
+		{
+			if (material % 11 <= material / 11 && canonical(material))
+			{
+				materials.add(material);
+			}
+		}
+		materials.sort(Comparator
+			.comparingInt((final Integer material) -> figures(material))
+			.thenComparingInt((final Integer material) -> // Number of pawns:
+				  (material / 11 % 5 == 1 ? 1 : 0)
+				+ (material % 11 % 5 == 1 ? 1 : 0)));
+		return materials;
+	}
+	
+	private static Path file(final Path directory, final int material)
+	{
+		final var white =
+			new StringBuilder("K");
+		final var black =
+			new StringBuilder("K");
+		for (final var figure : new int[]{material / 11, material % 11})
+		{
+			if (figure != 0)
+			{
+				(figure < 6 ? white : black).append("PRNBQ".charAt((figure - 1) % 5));
+			}
+		}
+		return directory.resolve(white + "v" + black + ".tablebase");
+	}
+	
+	/*
+		Generate the tables of all endgames with up to the given number of figures (at most
+		four) into the given directory, with the given number of threads, replacing any
+		existing tables. Returns the number of generated tables.
+	*/
+	public static int generate(final Path directory, final int figures, final int threads)
+		throws IOException
+	{
+		if (figures > figures_max)
+		{
+			throw new IllegalArgumentException(
+				"ERROR: Tablebases of more than " + figures_max + " figures not supported.");
+		}
+		Files.createDirectories(directory);
+		final var tablebase =
+			new Tablebase();
+		final var pool =
+			new ForkJoinPool(Math.max(threads, 1));
+		try
+		{
+			var count = 0;
+			for (final var material : materials())
+			{
+				if (figures(material) <= figures)
+				{
+					tablebase.new Generation(material).run(pool, file(directory, material));
+					tablebase.load(directory, material);
+					count++;
+				}
+			}
+			return count;
+		}
+		finally
+		{
+			pool.shutdownNow();
+		}
+	}
+	
+	/*
+		Run the given chunk function on chunks of the given number of entries in parallel.
+		Returns the maximum result of all chunks.
+	*/
+	private static int parallel(
+		  final ForkJoinPool pool
+		, final int size
+		, final IntBinaryOperator chunk)
+	{
+		final var chunk_size =
+			Math.max(size / (8 * pool.getParallelism()), 4096);
+		final var tasks =
+			new ArrayList<ForkJoinTask<Integer>>();
+		for (var begin = 0; begin < size; begin += chunk_size)
+		{
+			final var chunk_begin =
+				begin;
+			final var chunk_end =
+				Math.min(begin + chunk_size, size);
+			tasks.add(pool.submit(() -> chunk.applyAsInt(chunk_begin, chunk_end)));
+		}
+		var result = 0;
+		for (final var task : tasks)
+		{
+			result = Math.max(result, task.join());
+		}
+		return result;
+	}
+	
+	/*
+		Generation of the table of an endgame. While generating, the entry of each position is
+		0 while unresolved, 'invalid', 'draw' or the final entry of the position (cf.
+		'Tablebase'). For unresolved positions, the number of their moves within the endgame to
+		positions not resolved as wins of the opponent is counted: once the count is 0, the
+		position is lost (unless its moves leaving the endgame do better). The best moves
+		leaving the endgame are resolved before, using the other tables.
+	*/
+	private final class Generation
+	{
+		private final int count; // Number of figures.
+		private final boolean pawns;
+		private final int[] keys; // 'Figure.key' of the white king, black king and others.
+		private final byte[] entries;
+		private final byte[] counts;
+		private final byte[] exit_wins; // Fastest win leaving the endgame (entry, 0 if none).
+		private final byte[] exit_losses; // Slowest loss leaving the endgame; 'draw' if any.
+		
+		private Generation(final int material)
+		{
+			count = figures(material);
+			pawns = pawns(material);
+			keys = Arrays.copyOf(
+				  new int[]{6, 12, key(material / 11), key(material % 11)}
+				, count);
+			final var size =
+				size(material);
+			entries = new byte[size];
+			counts = new byte[size];
+			exit_wins = new byte[size];
+			exit_losses = new byte[size];
+		}
+		
+		private void run(final ForkJoinPool pool, final Path file) throws IOException
+		{
+			var limit =
+				parallel(pool, entries.length, this::analyse);
+			for (var code = 1; code <= limit; code++)
+			{
+				final var resolved =
+					code;
+				parallel(pool, entries.length, (final int begin, final int end) ->
+				{
+					for (var index = begin; index < end; index++)
+					{
+						if (entries[index] == 0
+							&& Byte.toUnsignedInt(exit_wins[index]) == resolved)
+						{
+							entries[index] = (byte) resolved;
+						}
+					}
+					return 0;
+				});
+				limit = Math.max(limit, parallel(
+					  pool
+					, entries.length
+					, (final int begin, final int end) -> predecessors(resolved, begin, end)));
+			}
+			write(file);
+		}
+		
+		/*
+			Player moving in the position of the given index, whose squares are decoded into
+			the given array.
+		*/
+		private boolean decode(final int index, final int[] squares)
+		{
+			var rest =
+				index;
+			for (var i = count - 1; i >= 1; i--)
+			{
+				squares[i] = rest & 63;
+				rest >>>= 6;
+			}
+			final var kings =
+				pawns ? 32 : 16;
+			final var king =
+				rest % kings;
+			squares[0] = (king & 3) + 8 * (king >> 2);
+			return rest / kings == 0;
+		}
+		
+		private int index(final boolean player, final int[] squares)
+		{
+			return Tablebase.index(
+				  player
+				, squares[0]
+				, squares[1]
+				, count > 2 ? squares[2] : -1
+				, count > 3 ? squares[3] : -1
+				, pawns);
+		}
+		
+		/*
+			Analyse the positions of the given index range: resolve invalid positions, the ones
+			without moves and the ones with just moves leaving the endgame; for all others,
+			count their moves within the endgame and resolve their best moves leaving it.
+			Returns the maximum entry to resolve.
+		*/
+		private int analyse(final int begin, final int end)
+		{
+			final var keys =
+				this.keys.clone();
+			final var squares =
+				new int[count];
+			var limit = 0;
+			for (var index = begin; index < end; index++)
+			{
+				final var player =
+					decode(index, squares);
+				if (!valid(player, keys, squares))
+				{
+					entries[index] = (byte) invalid;
+					continue;
+				}
+				var moves = 0;
+				var moves_within = 0;
+				var exit_win = 0;
+				var exit_loss = 0;
+				for (var i = 0; i < count; i++)
+				{
+					final var key =
+						keys[i];
+					if ((key < 7) != player)
+					{
+						continue;
+					}
+					final var from =
+						squares[i];
+					for (var targets = targets(key, from, keys, squares);
+						targets != 0;
+						targets &= targets - 1)
+					{
+						final var to =
+							Long.numberOfTrailingZeros(targets);
+						var captured =
+							-1;
+						for (var j = 0; j < count; j++)
+						{
+							captured = squares[j] == to ? j : captured;
+						}
+						final var promotion =
+							(key == 1 || key == 7) && (to >> 3 == 0 || to >> 3 == 7);
+						for (var promoted = promotion ? key + 4 : key;
+							promoted > (promotion ? key : key - 1);
+							promoted--)
+						{
+							keys[i] = promoted;
+							squares[i] = to;
+							if (captured >= 0)
+							{
+								squares[captured] = -1;
+							}
+							if (!attacked(squares[player ? 0 : 1], !player, keys, squares))
+							{
+								moves++;
+								if (captured == -1 && !promotion)
+								{
+									moves_within++;
+								}
+								else
+								{
+									final var code =
+										code(!player, keys, squares);
+									if (code == 0)
+									{
+										exit_loss = draw;
+									}
+									else if (code % 2 == 1)
+									{
+										exit_win = exit_win == 0
+											? code + 1
+											: Math.min(exit_win, code + 1);
+									}
+									else if (exit_loss != draw)
+									{
+										exit_loss = Math.max(exit_loss, code + 1);
+									}
+								}
+							}
+							keys[i] = key;
+							squares[i] = from;
+							if (captured >= 0)
+							{
+								squares[captured] = to;
+							}
+						}
+					}
+				}
+				if (exit_win >= draw || (exit_loss >= draw && exit_loss != draw))
+				{
+					throw new IllegalStateException("ERROR: Distance to mate too long.");
+				}
+				if (moves == 0)
+				{
+					final var check =
+						attacked(squares[player ? 0 : 1], !player, keys, squares);
+					entries[index] = (byte) (check ? 1 : draw); // Checkmate or stalemate.
+					limit = Math.max(limit, 1);
+				}
+				else if (moves_within == 0)
+				{
+					final var entry =
+						exit_win != 0 ? exit_win : exit_loss;
+					entries[index] = (byte) entry;
+					limit = entry == draw ? limit : Math.max(limit, entry);
+				}
+				else
+				{
+					counts[index] = (byte) moves_within;
+					exit_wins[index] = (byte) exit_win;
+					exit_losses[index] = (byte) exit_loss;
+					limit = Math.max(limit, exit_win);
+				}
+			}
+			return limit;
+		}
+		
+		/*
+			Resolve the unresolved predecessors of the positions of the given index range
+			resolved with the given entry. Returns the maximum entry resolved.
+		*/
+		private int predecessors(final int code, final int begin, final int end)
+		{
+			if (code + 1 >= draw)
+			{
+				throw new IllegalStateException("ERROR: Distance to mate too long.");
+			}
+			final var squares =
+				new int[count];
+			var limit = 0;
+			for (var index = begin; index < end; index++)
+			{
+				if (Byte.toUnsignedInt(entries[index]) != code)
+				{
+					continue;
+				}
+				final var mover =
+					!decode(index, squares);
+				var occupied = 0l;
+				for (final var square : squares)
+				{
+					occupied |= 1l << square;
+				}
+				for (var i = 0; i < count; i++)
+				{
+					final var key =
+						keys[i];
+					if ((key < 7) != mover)
+					{
+						continue;
+					}
+					final var to =
+						squares[i];
+					for (var origins = origins(key, to, occupied);
+						origins != 0;
+						origins &= origins - 1)
+					{
+						squares[i] = Long.numberOfTrailingZeros(origins);
+						final var predecessor =
+							index(mover, squares);
+						squares[i] = to;
+						if (entries[predecessor] != 0)
+						{
+							continue;
+						}
+						if (code % 2 == 1)
+						{ // Moving to a lost position wins:
+							if (bytes.compareAndSet(
+								  entries
+								, predecessor
+								, (byte) 0
+								, (byte) (code + 1)))
+							{
+								limit = Math.max(limit, code + 1);
+							}
+						}
+						else if (decrement(predecessor) == 0 && exit_wins[predecessor] == 0)
+						{ // All moves within the endgame lose and leaving it does not win:
+							final var exit_loss =
+								Byte.toUnsignedInt(exit_losses[predecessor]);
+							final var entry =
+								exit_loss == draw ? draw : Math.max(code + 1, exit_loss);
+							if (bytes.compareAndSet(entries, predecessor, (byte) 0, (byte) entry)
+								&& entry != draw)
+							{
+								limit = Math.max(limit, entry);
+							}
+						}
+					}
+				}
+			}
+			return limit;
+		}
+		
+		/*
+			Decrement the count of the given position atomically. Returns the decremented count.
+		*/
+		private int decrement(final int index)
+		{
+			while (true)
+			{
+				final var count =
+					counts[index];
+				if (bytes.compareAndSet(counts, index, count, (byte) (count - 1)))
+				{
+					return count - 1;
+				}
+			}
+		}
+		
+		/*
+			Entry of the position of the given figures (with square -1 if captured) in the
+			tables of other endgames.
+		*/
+		private int code(final boolean player, final int[] keys, final int[] squares)
+		{
+			var figure_1 = 0;
+			var square_1 = -1;
+			var figure_2 = 0;
+			var square_2 = -1;
+			for (var i = 2; i < count; i++)
+			{
+				if (squares[i] >= 0 && figure_1 == 0)
+				{
+					figure_1 = figure(keys[i]);
+					square_1 = squares[i];
+				}
+				else if (squares[i] >= 0)
+				{
+					figure_2 = figure(keys[i]);
+					square_2 = squares[i];
+				}
+			}
+			final var code =
+				Tablebase.this.code(
+					  player
+					, squares[0]
+					, squares[1]
+					, figure_1
+					, square_1
+					, figure_2
+					, square_2);
+			if (code < 0)
+			{
+				throw new IllegalStateException("ERROR: Missing tablebase.");
+			}
+			return code;
+		}
+		
+		private void write(final Path file) throws IOException
+		{
+			var maximum = 1;
+			for (final var entry : entries)
+			{
+				final var code =
+					Byte.toUnsignedInt(entry);
+				maximum = code < draw ? Math.max(maximum, code) : maximum;
+			}
+			final var bits =
+				32 - Integer.numberOfLeadingZeros(maximum);
+			try (final var output = new DataOutputStream(new BufferedOutputStream(
+				Files.newOutputStream(file), 65536)))
+			{
+				output.writeLong(magic);
+				output.writeInt(bits);
+				var buffer = 0;
+				var buffered = 0;
+				for (final var entry : entries)
+				{
+					final var code =
+						Byte.toUnsignedInt(entry);
+					buffer = (buffer << bits) | (code < draw ? code : 0);
+					buffered += bits;
+					if (buffered >= 8)
+					{
+						buffered -= 8;
+						output.write(buffer >>> buffered);
+						buffer &= (1 << buffered) - 1;
+					}
+				}
+				output.write(buffer << (8 - buffered)); // Last bits and padding.
+				output.write(0); // Padding for reading entries as shorts.
+			}
+		}
+	}
+	
+	/*
+		Whether the given position (the figures' keys and squares) is valid: no two figures
+		on the same square, no pawns on the first or last rank and the king of the player not
+		moving not in check.
+	*/
+	private static boolean valid(final boolean player, final int[] keys, final int[] squares)
+	{
+		for (var i = 0; i < squares.length; i++)
+		{
+			for (var j = i + 1; j < squares.length; j++)
+			{
+				if (squares[i] == squares[j])
+				{
+					return false;
+				}
+			}
+			if ((keys[i] == 1 || keys[i] == 7) && (squares[i] >> 3 == 0 || squares[i] >> 3 == 7))
+			{
+				return false;
+			}
+		}
+		return !attacked(squares[player ? 1 : 0], player, keys, squares);
+	}
+	
+	/*
+		Whether the given square is attacked by any figure of the given player, whereby the
+		figures are given by their keys and squares (-1 for captured figures).
+	*/
+	private static boolean attacked(
+		  final int square
+		, final boolean player
+		, final int[] keys
+		, final int[] squares)
+	{
+		var occupied = 0l;
+		for (final var figure_square : squares)
+		{
+			occupied |= figure_square >= 0 ? 1l << figure_square : 0l;
+		}
+		for (var i = 0; i < squares.length; i++)
+		{
+			if (squares[i] >= 0 && (keys[i] < 7) == player
+				&& (attacks(keys[i], squares[i], occupied) & (1l << square)) != 0)
+			{
+				return true;
+			}
+		}
+		return false;
+	}
+	
+	private static long attacks(final int key, final int square, final long occupied)
+	{
+		return switch (key)
+			{
+			case 1 -> Bitboard.pawn_attacks(square, true);
+			case 7 -> Bitboard.pawn_attacks(square, false);
+			case 2, 8 -> Bitboard.rook_attacks(square, occupied);
+			case 3, 9 -> Bitboard.knight_attacks(square);
+			case 4, 10 -> Bitboard.bishop_attacks(square, occupied);
+			case 5, 11 -> Bitboard.queen_attacks(square, occupied);
+			default -> Bitboard.king_attacks(square);
+			};
+	}
+	
+	/*
+		Squares the given figure can move to from the given square, including captures (but
+		no castlings and en passant captures) and regardless of threatening its own king.
+	*/
+	private static long targets(
+		  final int key
+		, final int square
+		, final int[] keys
+		, final int[] squares)
+	{
+		final var player =
+			key < 7;
+		var occupied = 0l;
+		var own = 0l;
+		for (var i = 0; i < squares.length; i++)
+		{
+			occupied |= 1l << squares[i];
+			own |= (keys[i] < 7) == player ? 1l << squares[i] : 0l;
+		}
+		if (key != 1 && key != 7)
+		{
+			return attacks(key, square, occupied) & ~own;
+		}
+		final var forward =
+			player ? 8 : -8;
+		var targets =
+			Bitboard.pawn_attacks(square, player) & occupied & ~own;
+		if ((occupied & (1l << (square + forward))) == 0)
+		{
+			targets |= 1l << (square + forward);
+			if ((square >> 3) == (player ? 1 : 6)
+				&& (occupied & (1l << (square + 2 * forward))) == 0)
+			{
+				targets |= 1l << (square + 2 * forward);
+			}
+		}
+		return targets;
+	}
+	
+	/*
+		Squares the given figure can have moved to the given square from, without capturing
+		(the inverse of 'targets' without captures and promotions).
+	*/
+	private static long origins(final int key, final int square, final long occupied)
+	{
+		if (key != 1 && key != 7)
+		{
+			return attacks(key, square, occupied) & ~occupied;
+		}
+		final var backward =
+			key == 1 ? -8 : 8;
+		final var rank =
+			square >> 3;
+		var origins = 0l;
+		if ((key == 1 ? rank >= 2 : rank <= 5)
+			&& (occupied & (1l << (square + backward))) == 0)
+		{
+			origins |= 1l << (square + backward);
+			if (rank == (key == 1 ? 3 : 4)
+				&& (occupied & (1l << (square + 2 * backward))) == 0)
+			{
+				origins |= 1l << (square + 2 * backward);
+			}
+		}
+		return origins;
+	}
+}
@@ -0,0 +1,587 @@
+/*
+	This program and the accompanying materials are made available under the terms of the MIT
+	license (X11 license) which accompanies this distribution.
+	
+	Author: Christoff Bürger
+*/
+
+package pmchess.logic;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+import java.io.*;
+
+import java.nio.charset.*;
+import java.nio.file.*;
+
+/*
+	Texel-style tuning of the weights of 'HandcraftedEvaluator' on a corpus of labelled
+	positions: the tuned weights minimise the error between the game results of the positions
+	and the logistic function of their scores.
+	
+	The score of 'HandcraftedEvaluator' (without noise) is linear in the tuned weights, which
+	are the weights of the scoring criteria, the development bonus and penalties and the
+	middlegame and endgame mobility tables.
+	Hence, each position is reduced once, when loading the corpus, to its coefficients of the
+	weights, stored in flat primitive arrays. Tuning passes just compute dot products of
+	coefficients and weights, without any allocations per position; passes are split into
+	chunks of positions run in parallel by a fork/join pool.
+	
+	The corpus is a text file with a position per line: a position in Forsyth-Edwards Notation
+	followed by the result of its game ('1-0', '0-1', '1/2-1/2' or '[1.0]', '[0.0]', '[0.5]',
+	optionally quoted or followed by ';'). Since FEN has no castling history, castlings are
+	considered not done.
+*/
+public final class Tuner
+{
+	/*
+		Layout of the tuned weights: the weights of the scoring criteria (material, placement and
+		pawn formation) and the development bonus and penalties (cf. 'development_table';
+		scaled by the fixed development weight) followed by the middlegame mobility table and
+		then the endgame mobility table of rooks, knights, bishops and queens (29 entries each).
+	*/
+	private static final int development = 3;
+	private static final int development_entries = 5;
+	private static final int criteria = development + development_entries;
+	private static final int mobility_entries = 29;
+	private static final int mobility_middlegame = criteria;
+	private static final int mobility_endgame = mobility_middlegame + 4 * mobility_entries;
+	private static final int weights_count = mobility_endgame + 4 * mobility_entries;
+	private static final String[] mobility_figures = {"Rook", "Knight", "Bishop", "Queen"};
+	
+	private static final int chunk_size = 16384; // Positions per parallel task.
+	
+	/*
+		Coefficients of all positions: for each position, the coefficients of the scoring
+		criteria, the result of its game (in halves of a point for White), its phase and a range
+		of mobility entries. Mobility entries are 'mobility table index + 1', negated for Black's
+		figures (cf. 'add_position').
+	*/
+	private int positions = 0;
+	private int[] criteria_coefficients = new int[criteria * 1024];
+	private byte[] results = new byte[1024];
+	private byte[] phases = new byte[1024];
+	private int[] mobility_begin = new int[1025];
+	private short[] mobility = new short[16384];
+	
+	private final ForkJoinPool pool; // 'null' for tuners just used to parse chunks.
+	
+	private Tuner(final ForkJoinPool pool)
+	{
+		this.pool = pool;
+	}
+	
+	/*
+		Tune the weights of 'HandcraftedEvaluator' on the given corpus for the given number of
+		gradient descent iterations and write the tuned weights, formatted like the tables of
+		'HandcraftedEvaluator', to the given output file. Progress is reported to the given
+		stream.
+	*/
+	public static void tune(
+		  final Path corpus
+		, final Path output
+		, final int iterations
+		, final PrintStream log)
+		throws IOException
+	{
+		final var tuner =
+			new Tuner(new ForkJoinPool(Runtime.getRuntime().availableProcessors()));
+		try
+		{
+			tuner.load(corpus, log);
+			if (tuner.positions == 0)
+			{
+				throw new IOException("ERROR: Empty corpus " + corpus + ".");
+			}
+			final var weights =
+				initial_weights();
+			final var k =
+				tuner.fit_scaling(weights);
+			log.println("Scaling constant: " + k);
+			log.println("Initial error: " + tuner.error(weights, k, null));
+			tuner.descend(weights, k, iterations, log);
+			final var error =
+				tuner.error(weights, k, null);
+			log.println("Final error: " + error);
+			Files.writeString(
+				  output
+				, format(weights, tuner.positions, error)
+				, StandardCharsets.UTF_8);
+		}
+		finally
+		{
+			tuner.pool.shutdown();
+		}
+	}
+	
+	private static double[] initial_weights()
+	{
+		final var weights =
+			new double[weights_count];
+		weights[0] = HandcraftedEvaluator.weight_material;
+		weights[1] = HandcraftedEvaluator.weight_placement;
+		weights[2] = HandcraftedEvaluator.weight_pawn_formation;
+		for (var entry = 0; entry < development_entries; entry++)
+		{
+			weights[development + entry] = HandcraftedEvaluator.development_table[entry];
+		}
+		for (var figure = 0; figure < 4; figure++)
+		{
+			final var key =
+				figure + 2; // White's rook, knight, bishop and queen.
+			for (var n = 0; n < mobility_entries; n++)
+			{
+				weights[mobility_middlegame + figure * mobility_entries + n] =
+					HandcraftedEvaluator.mobility_table_middlegame[key][n];
+				weights[mobility_endgame + figure * mobility_entries + n] =
+					HandcraftedEvaluator.mobility_table_endgame[key][n];
+			}
+		}
+		return weights;
+	}
+	
+	/*
+		Load the corpus in chunks of lines, each chunk parsed in parallel.
+	*/
+	private void load(final Path corpus, final PrintStream log) throws IOException
+	{
+		try (final var reader = Files.newBufferedReader(corpus, StandardCharsets.UTF_8))
+		{
+			final var lines =
+				new ArrayList<String>(chunk_size * 4);
+			var line_number = 0;
+			for (var line = reader.readLine(); line != null; line = reader.readLine())
+			{
+				line_number++;
+				if (!line.isBlank())
+				{
+					lines.add(line);
+				}
+				if (lines.size() == chunk_size * 4)
+				{
+					load_lines(lines, line_number);
+					lines.clear();
+					log.println("Loaded positions: " + positions);
+				}
+			}
+			load_lines(lines, line_number);
+			log.println("Loaded positions: " + positions);
+		}
+	}
+	
+	private void load_lines(final List<String> lines, final int last_line_number)
+		throws IOException
+	{
+		final var tasks =
+			new ArrayList<ForkJoinTask<Tuner>>();
+		for (var begin = 0; begin < lines.size(); begin += chunk_size)
+		{
+			final var chunk =
+				lines.subList(begin, Math.min(begin + chunk_size, lines.size()));
+			tasks.add(pool.submit(() ->
+				{
+					final var parsed =
+						new Tuner(null);
+					for (final var line : chunk)
+					{
+						parsed.add_line(line);
+					}
+					return parsed;
+				}));
+		}
+		for (final var task : tasks)
+		{
+			try
+			{
+				append(task.get());
+			}
+			catch (ExecutionException exception)
+			{
+				throw new IOException(
+					  "ERROR: Invalid corpus position before line " + (last_line_number + 1)
+					+ ": " + exception.getCause().getMessage());
+			}
+			catch (InterruptedException exception)
+			{
+				throw new InterruptedIOException("ERROR: Corpus loading interrupted.");
+			}
+		}
+	}
+	
+	private void add_line(final String line)
+	{
+		final var result_begin =
+			Math.max(line.lastIndexOf(' '), line.lastIndexOf('\t'));
+		final var result =
+			line.substring(result_begin + 1).replace("\"", "").replace(";", "");
+		final byte halves;
+		switch (result)
+		{
+		case "1-0":
+		case "[1.0]":
+			halves = 2;
+			break;
+		case "0-1":
+		case "[0.0]":
+			halves = 0;
+			break;
+		case "1/2-1/2":
+		case "[0.5]":
+			halves = 1;
+			break;
+		default:
+			throw new IllegalArgumentException("ERROR: Invalid result " + result + ".");
+		}
+		// Ignore extended position description operations (e.g., 'c9') after the FEN:
+		final var fen =
+			new StringBuilder();
+		var fields = 0;
+		for (final var field : line.substring(0, result_begin).trim().split("\\s+"))
+		{
+			if (fields == 6 || field.matches("c\\d+"))
+			{
+				break;
+			}
+			fen.append(field).append(' ');
+			fields++;
+		}
+		add_position(Board.fen(fen.toString()), halves);
+	}
+	
+	/*
+		Store the coefficients of the weights for the score of White in the given position.
+	*/
+	private void add_position(final Board board, final byte result)
+	{
+		ensure_capacity(positions + 1, mobility_begin[positions] + 32);
+		final var phase =
+			Math.min(board.phase(), HandcraftedEvaluator.phase_max);
+		final var i =
+			positions * criteria;
+		criteria_coefficients[i] =
+			board.material(true) - board.material(false);
+		criteria_coefficients[i + 1] =
+			HandcraftedEvaluator.tapered(
+				  board.placement_middlegame(true) - board.placement_middlegame(false)
+				, board.placement_endgame(true) - board.placement_endgame(false)
+				, phase);
+		criteria_coefficients[i + 2] =
+			HandcraftedEvaluator.pawn_formation(
+				  board.squares(Figure.pawn(true))
+				, board.squares(Figure.pawn(false)));
+		final var unit =
+			new int[development_entries];
+		for (var entry = 0; entry < development_entries; entry++)
+		{ // Coefficient of each bonus or penalty (a unit table counts its occurrences):
+			unit[entry] = 1;
+			criteria_coefficients[i + development + entry] =
+				HandcraftedEvaluator.weight_development
+				* HandcraftedEvaluator.development(board, true, unit);
+			unit[entry] = 0;
+		}
+		results[positions] = result;
+		phases[positions] = (byte) phase;
+		var entry =
+			mobility_begin[positions];
+		for (final var player : new boolean[] {true, false})
+		{
+			final var own =
+				board.occupied(player);
+			final var occupied =
+				own | board.occupied(!player);
+			final Figure[] figures =
+				{
+					  Figure.rook(player)
+					, Figure.knight(player)
+					, Figure.bishop(player)
+					, Figure.queen(player)
+				};
+			for (var figure = 0; figure < 4; figure++)
+			{
+				for (var squares = board.squares(figures[figure]);
+					squares != 0;
+					squares &= squares - 1)
+				{
+					final var square =
+						Long.numberOfTrailingZeros(squares);
+					final var attacks =
+						switch (figure)
+						{
+						case 0 -> Bitboard.rook_attacks(square, occupied);
+						case 1 -> Bitboard.knight_attacks(square);
+						case 2 -> Bitboard.bishop_attacks(square, occupied);
+						default -> Bitboard.queen_attacks(square, occupied);
+						};
+					final var index =
+						figure * mobility_entries + Long.bitCount(attacks & ~own) + 1;
+					ensure_capacity(positions + 1, entry + 1);
+					mobility[entry++] = (short) (player ? index : -index);
+				}
+			}
+		}
+		mobility_begin[++positions] = entry;
+	}
+	
+	private void ensure_capacity(final int positions, final int mobility_entries)
+	{
+		if (positions >= results.length)
+		{
+			final var capacity =
+				Math.max(positions, 2 * results.length);
+			criteria_coefficients = Arrays.copyOf(criteria_coefficients, capacity * criteria);
+			results = Arrays.copyOf(results, capacity);
+			phases = Arrays.copyOf(phases, capacity);
+			mobility_begin = Arrays.copyOf(mobility_begin, capacity + 1);
+		}
+		if (mobility_entries > mobility.length)
+		{
+			mobility = Arrays.copyOf(mobility, Math.max(mobility_entries, 2 * mobility.length));
+		}
+	}
+	
+	private void append(final Tuner parsed)
+	{
+		final var mobility_offset =
+			mobility_begin[positions];
+		ensure_capacity(
+			  positions + parsed.positions
+			, mobility_offset + parsed.mobility_begin[parsed.positions]);
+		System.arraycopy(
+			  parsed.criteria_coefficients
+			, 0
+			, criteria_coefficients
+			, positions * criteria
+			, parsed.positions * criteria);
+		System.arraycopy(parsed.results, 0, results, positions, parsed.positions);
+		System.arraycopy(parsed.phases, 0, phases, positions, parsed.positions);
+		System.arraycopy(
+			  parsed.mobility
+			, 0
+			, mobility
+			, mobility_offset
+			, parsed.mobility_begin[parsed.positions]);
+		for (var i = 1; i <= parsed.positions; i++)
+		{
+			mobility_begin[positions + i] = mobility_offset + parsed.mobility_begin[i];
+		}
+		positions += parsed.positions;
+	}
+	
+	/*
+		Score of White in the given position for the given weights.
+	*/
+	private double score(final double[] weights, final int position)
+	{
+		final var i =
+			position * criteria;
+		var score = 0.0;
+		for (var c = 0; c < criteria; c++)
+		{
+			score += weights[c] * criteria_coefficients[i + c];
+		}
+		final var phase =
+			phases[position] / (double) HandcraftedEvaluator.phase_max;
+		for (var e = mobility_begin[position]; e < mobility_begin[position + 1]; e++)
+		{
+			final var entry =
+				mobility[e];
+			final var index =
+				(entry > 0 ? entry : -entry) - 1;
+			final var value =
+				phase * weights[mobility_middlegame + index]
+				+ (1 - phase) * weights[mobility_endgame + index];
+			score += entry > 0 ? value : -value;
+		}
+		return score;
+	}
+	
+	/*
+		Mean squared error of the given weights and scaling constant. If a gradient array is
+		given, the gradient of the error is added to it.
+	*/
+	private double error(final double[] weights, final double k, final double[] gradient)
+	{
+		final var tasks =
+			new ArrayList<ForkJoinTask<double[]>>();
+		for (var begin = 0; begin < positions; begin += chunk_size)
+		{
+			final var chunk_begin =
+				begin;
+			final var chunk_end =
+				Math.min(begin + chunk_size, positions);
+			tasks.add(pool.submit(() ->
+				error(weights, k, gradient != null, chunk_begin, chunk_end)));
+		}
+		var error = 0.0;
+		for (final var task : tasks)
+		{
+			final var chunk =
+				task.join();
+			error += chunk[weights_count];
+			if (gradient != null)
+			{
+				for (var i = 0; i < weights_count; i++)
+				{
+					gradient[i] += chunk[i] / positions;
+				}
+			}
+		}
+		return error / positions;
+	}
+	
+	/*
+		Squared error (last array element) and its gradient (the other elements) of the given
+		range of positions.
+	*/
+	private double[] error(
+		  final double[] weights
+		, final double k
+		, final boolean compute_gradient
+		, final int begin
+		, final int end)
+	{
+		final var result =
+			new double[weights_count + 1];
+		for (var position = begin; position < end; position++)
+		{
+			final var sigmoid =
+				1 / (1 + Math.exp(-k * score(weights, position)));
+			final var difference =
+				results[position] / 2.0 - sigmoid;
+			result[weights_count] += difference * difference;
+			if (!compute_gradient)
+			{
+				continue;
+			}
+			final var factor =
+				-2 * difference * k * sigmoid * (1 - sigmoid);
+			final var i =
+				position * criteria;
+			for (var c = 0; c < criteria; c++)
+			{
+				result[c] += factor * criteria_coefficients[i + c];
+			}
+			final var phase =
+				phases[position] / (double) HandcraftedEvaluator.phase_max;
+			for (var e = mobility_begin[position]; e < mobility_begin[position + 1]; e++)
+			{
+				final var entry =
+					mobility[e];
+				final var index =
+					(entry > 0 ? entry : -entry) - 1;
+				final var signed_factor =
+					entry > 0 ? factor : -factor;
+				result[mobility_middlegame + index] += signed_factor * phase;
+				result[mobility_endgame + index] += signed_factor * (1 - phase);
+			}
+		}
+		return result;
+	}
+	
+	/*
+		Scaling constant of the logistic function best fitting the scores of the given weights
+		to the results (golden-section search).
+	*/
+	private double fit_scaling(final double[] weights)
+	{
+		final var ratio =
+			(Math.sqrt(5) - 1) / 2;
+		var low = 0.0001;
+		var high = 0.1;
+		for (var i = 0; i < 30; i++)
+		{
+			final var k1 =
+				high - ratio * (high - low);
+			final var k2 =
+				low + ratio * (high - low);
+			if (error(weights, k1, null) < error(weights, k2, null))
+			{
+				high = k2;
+			}
+			else
+			{
+				low = k1;
+			}
+		}
+		return (low + high) / 2;
+	}
+	
+	/*
+		Gradient descent with adaptive moment estimation (Adam).
+	*/
+	private void descend(
+		  final double[] weights
+		, final double k
+		, final int iterations
+		, final PrintStream log)
+	{
+		final var learning_rate = 0.1;
+		final var beta1 = 0.9;
+		final var beta2 = 0.999;
+		final var moments =
+			new double[weights_count];
+		final var velocities =
+			new double[weights_count];
+		final var gradient =
+			new double[weights_count];
+		for (var iteration = 1; iteration <= iterations; iteration++)
+		{
+			Arrays.fill(gradient, 0);
+			final var error =
+				error(weights, k, gradient);
+			for (var i = 0; i < weights_count; i++)
+			{
+				moments[i] = beta1 * moments[i] + (1 - beta1) * gradient[i];
+				velocities[i] = beta2 * velocities[i] + (1 - beta2) * gradient[i] * gradient[i];
+				final var moment =
+					moments[i] / (1 - Math.pow(beta1, iteration));
+				final var velocity =
+					velocities[i] / (1 - Math.pow(beta2, iteration));
+				weights[i] -= learning_rate * moment / (Math.sqrt(velocity) + 1e-12);
+			}
+			if (iteration % 10 == 0 || iteration == iterations)
+			{
+				log.println("Iteration " + iteration + ": error " + error);
+			}
+		}
+	}
+	
+	/*
+		Tuned weights, rounded and formatted like the tables of 'HandcraftedEvaluator'.
+	*/
+	private static String format(final double[] weights, final int positions, final double error)
+	{
+		final var text =
+			new StringBuilder();
+		text.append("// pmChess tuning of " + positions + " positions, error " + error + ".\n");
+		text.append("weight_material = " + Math.round(weights[0]) + ";\n");
+		text.append("weight_placement = " + Math.round(weights[1]) + ";\n");
+		text.append("weight_pawn_formation = " + Math.round(weights[2]) + ";\n");
+		text.append("development_table = {");
+		for (var entry = 0; entry < development_entries; entry++)
+		{
+			text.append((entry == 0 ? "" : ", ") + Math.round(weights[development + entry]));
+		}
+		text.append("};\n");
+		for (final var table : new int[] {mobility_middlegame, mobility_endgame})
+		{
+			text.append(table == mobility_middlegame
+				? "mobility_table_middlegame:\n"
+				: "mobility_table_endgame:\n");
+			for (var figure = 0; figure < 4; figure++)
+			{
+				text.append("\t, { // " + mobility_figures[figure] + ":\n\t\t  ");
+				for (var n = 0; n < mobility_entries; n++)
+				{
+					text.append(String.format(
+						  "%4d"
+						, Math.round(weights[table + figure * mobility_entries + n])));
+					text.append(n == 10 || n == 20 ? "\n\t\t, " : (n == 28 ? "\n" : ","));
+				}
+				text.append("\t  }\n");
+			}
+		}
+		return text.toString();
+	}
+}
@@ -8,4 +8,5 @@
 module pmchess
 {
 	requires java.desktop;
+	requires jdk.jfr;
 }
@@ -23,7 +23,6 @@ public final class pmChess
 			, "Source code available at https://github.com/christoff-buerger/pmChess."
 		};
 	
-	// Static => enforce licenses exist:
 	public static final String[] licenses_subjects =
 		{
 			  "pmChess (MIT license)"
@@ -35,17 +34,32 @@ public final class pmChess
 			, "OpenJDK (GPL-2.0-with-classpath-exception license)"
 			, "Eclipse Temurin (GPL-2.0-with-classpath-exception license)"
 		};
-	public static final String[] licenses =
-		{
-			  Resources.load_text("licenses/pmChess-license.txt")
-			, Resources.load_text("licenses/Open-Sans-license.txt")
-			, Resources.load_text("licenses/Chess-Merida-Unicode-license.txt")
-			, Resources.load_text("licenses/Material-Symbols-license.txt")
-			, Resources.load_text("licenses/Linux-Libertine-license.txt")
-			, Resources.load_text("licenses/DSEG-license.txt")
-			, Resources.load_text("licenses/OpenJDK-license.txt")
-			, Resources.load_text("licenses/Eclipse-Temurin-license.txt")
-		};
+	
+	/*
+		License texts of 'licenses_subjects'. Loaded on first use, such that command line
+		processing not needing them does not initialize 'Resources' (and with it the graphical
+		user interface).
+	*/
+	public static String[] licenses()
+	{
+		return Licenses.licenses;
+	}
+	
+	private static final class Licenses
+	{
+		// Static => enforce licenses exist:
+		private static final String[] licenses =
+			{
+				  Resources.load_text("licenses/pmChess-license.txt")
+				, Resources.load_text("licenses/Open-Sans-license.txt")
+				, Resources.load_text("licenses/Chess-Merida-Unicode-license.txt")
+				, Resources.load_text("licenses/Material-Symbols-license.txt")
+				, Resources.load_text("licenses/Linux-Libertine-license.txt")
+				, Resources.load_text("licenses/DSEG-license.txt")
+				, Resources.load_text("licenses/OpenJDK-license.txt")
+				, Resources.load_text("licenses/Eclipse-Temurin-license.txt")
+			};
+	}
 	
 	/*
 		Process command line arguments or, in case there are none, start GUI.
@@ -76,7 +90,47 @@ public final class pmChess
 				  --scale n:    Scale graphical user interface by n%%.
 				                n must be an integer in interval [%d, %d].
 				                Values outside the interval are saturated.
-				                Non-integer values fail with an error."""
+				                Non-integer values fail with an error.
+				  --tune c o i: Tune evaluation weights on corpus file c for i
+				                iterations (default 100) and write them to file o.
+				                c lists a position per line: FEN followed by
+				                game result (1-0, 0-1 or 1/2-1/2).
+				  --engine d:   Run headless engine, reading positions from standard
+				                input and printing best moves found with search
+				                depth d (default 4, minimum 4). Positions are
+				                'startpos' or FEN, optionally followed by 'moves'
+				                and moves in coordinate notation (e.g., e2e4).
+				                'quit' or the end of input stops the engine.
+				  --uci:        Run headless engine using the Universal Chess
+				                Interface (UCI) protocol on standard input and
+				                output, e.g., for chess tournament managers.
+				  --import p a: Import the games of PGN file p into the new game
+				                archive a and index its positions (files a,
+				                a.index and a.positions).
+				  --book p b:   Build opening book b of the first 24 plies of the
+				                games of PGN file p, keeping moves played in at
+				                least 2 games. pmChess plays moves of book
+				                'opening-book.data', if it exists.
+				  --endgames d: Generate endgame tablebases of all endgames with up
+				                to four figures into directory d. pmChess plays
+				                perfectly with the tablebases of directory
+				                'tablebases', if it exists.
+				  --match a b s n e0 e1:
+				                Play up to n games (default 1000) between computer
+				                configurations a and b from the openings of file
+				                s, on all processors, and report Elo of a to b.
+				                Stops early once SPRT decides between Elo e0 (H0,
+				                default 0) and e1 (H1, default 10); e0 and e1 are
+				                given both or none. Configurations are
+				                evaluator:limit, with evaluator handcrafted and
+				                limit a search depth dN or a time control B+I in
+				                seconds, optionally followed by search options
+				                ,book=f (play moves of opening book f),
+				                ,tablebases=d (use tablebases of directory d) and
+				                ,noise (evaluate with noise), e.g., handcrafted:d5
+				                or handcrafted:10+0.1,book=opening-book.data.
+				                s lists an opening per line: startpos or FEN,
+				                optionally followed by moves (cf. --engine)."""
 				, Resources.base_scale_min_percent
 				, Resources.base_scale_max_percent));
 			System.exit(0);
@@ -85,7 +139,7 @@ public final class pmChess
 			System.out.println(about[0]);
 			System.out.println(about[1]);
 			System.out.println();
-			System.out.println(licenses[0]);
+			System.out.println(licenses()[0]);
 			System.exit(0);
 		case "--scale":
 			to_many_arguments.accept(2);
@@ -103,6 +157,157 @@ public final class pmChess
 				+ Resources.base_scale_in_percent(Resources.read_base_scale_configuration())
 				+ "%.");
 			System.exit(0);
+		case "--tune":
+			to_many_arguments.accept(4);
+			try
+			{
+				pmchess.logic.Tuner.tune(
+					  java.nio.file.Path.of(args[1])
+					, java.nio.file.Path.of(args[2])
+					, args.length > 3 ? Integer.parseInt(args[3]) : 100
+					, System.out);
+			}
+			catch (final Exception e)
+			{
+				System.out.println(" !!! ERROR: Tuning failed !!!");
+				System.out.println(e.getMessage());
+				System.exit(1);
+			}
+			System.exit(0);
+		case "--engine":
+			to_many_arguments.accept(2);
+			final int search_depth;
+			try
+			{
+				search_depth = args.length > 1 ? Integer.parseInt(args[1]) : 4;
+			}
+			catch (final Exception e)
+			{
+				System.out.println(" !!! ERROR: Invalid search depth !!!");
+				System.exit(1);
+				return;
+			}
+			try
+			{
+				pmchess.logic.Engine.run(
+					  new java.io.BufferedReader(new java.io.InputStreamReader(System.in))
+					, System.out
+					, search_depth);
+			}
+			catch (final Exception e)
+			{
+				System.out.println(" !!! ERROR: Engine failed !!!");
+				System.out.println(e.getMessage());
+				System.exit(1);
+			}
+			System.exit(0);
+		case "--uci":
+			to_many_arguments.accept(1);
+			try
+			{
+				pmchess.uci.UCI.run(
+					  new java.io.BufferedReader(new java.io.InputStreamReader(System.in))
+					, System.out);
+			}
+			catch (final Exception e)
+			{
+				System.out.println(" !!! ERROR: UCI engine failed !!!");
+				System.out.println(e.getMessage());
+				System.exit(1);
+			}
+			System.exit(0);
+		case "--import":
+			to_many_arguments.accept(3);
+			try
+			{
+				final var archive =
+					java.nio.file.Path.of(args[2]);
+				final var threads =
+					Runtime.getRuntime().availableProcessors();
+				final var games =
+					pmchess.logic.GameArchive.import_pgn(
+						  java.nio.file.Path.of(args[1])
+						, archive
+						, threads
+						, System.out::println);
+				System.out.println("Imported games: " + games);
+				final var positions =
+					pmchess.logic.PositionIndex.build(archive, threads);
+				System.out.println("Indexed positions: " + positions);
+			}
+			catch (final Exception e)
+			{
+				System.out.println(" !!! ERROR: Import failed !!!");
+				System.out.println(e.getMessage());
+				System.exit(1);
+			}
+			System.exit(0);
+		case "--book":
+			to_many_arguments.accept(3);
+			try
+			{
+				final var entries =
+					pmchess.logic.OpeningBook.build(
+						  java.nio.file.Path.of(args[1])
+						, java.nio.file.Path.of(args[2])
+						, 24
+						, 2
+						, Runtime.getRuntime().availableProcessors()
+						, System.out::println);
+				System.out.println("Book entries: " + entries);
+			}
+			catch (final Exception e)
+			{
+				System.out.println(" !!! ERROR: Opening book build failed !!!");
+				System.out.println(e.getMessage());
+				System.exit(1);
+			}
+			System.exit(0);
+		case "--endgames":
+			to_many_arguments.accept(2);
+			try
+			{
+				final var tables =
+					pmchess.logic.Tablebase.generate(
+						  java.nio.file.Path.of(args[1])
+						, 4
+						, Runtime.getRuntime().availableProcessors());
+				System.out.println("Generated tablebases: " + tables);
+			}
+			catch (final Exception e)
+			{
+				System.out.println(" !!! ERROR: Tablebase generation failed !!!");
+				System.out.println(e.getMessage());
+				System.exit(1);
+			}
+			System.exit(0);
+		case "--match":
+			to_many_arguments.accept(7);
+			if (args.length < 4 || args.length == 6)
+			{
+				System.out.println(" !!! ERROR: Missing command line arguments !!!");
+				System.out.println("Usage: --match a b s [n [e0 e1]] (cf. --help).");
+				System.exit(1);
+			}
+			try
+			{
+				pmchess.logic.Match.run(
+					  pmchess.logic.Match.Configuration.parse(args[1])
+					, pmchess.logic.Match.Configuration.parse(args[2])
+					, java.nio.file.Path.of(args[3])
+					, args.length > 4 ? Integer.parseInt(args[4]) : 1000
+					, Runtime.getRuntime().availableProcessors()
+					, args.length > 5 ? Double.parseDouble(args[5]) : 0.0
+					, args.length > 6 ? Double.parseDouble(args[6]) : 10.0
+					, System.out);
+			}
+			catch (final Exception e)
+			{
+				System.out.println(" !!! ERROR: Match failed !!!");
+				System.out.println(e.getMessage());
+				System.exit(1);
+			}
+			System.exit(0);
 		default:
 			System.out.println(" !!! ERROR: Unknown command line arguments !!!");
 			System.exit(1);
@@ -112,19 +317,28 @@ public final class pmChess
 			new Runnable()
 			{
 				private static final String adjourned_game_file =
-					"adjourned-game.data";
+					"adjourned-game.journal";
+				private static final String legacy_adjourned_game_file =
+					"adjourned-game.data"; // Of pmChess versions before journals.
+				private static final String opening_book_file =
+					"opening-book.data";
+				private static final String tablebase_directory =
+					"tablebases";
 				
 				@Override public void run()
 				{
+					licenses(); // Enforce licenses exist.
 					final GUI gui =
 						new GUI();
-					gui.load_game(adjourned_game_file);
+					gui.load_opening_book(opening_book_file);
+					gui.load_tablebase(tablebase_directory);
+					gui.load_game(adjourned_game_file, legacy_adjourned_game_file);
 					Runtime.getRuntime().addShutdownHook(
 						new Thread()
 						{
 							@Override public void run()
 							{
-								gui.save_game(adjourned_game_file);
+								gui.save_game();
 							}
 						});
 				}
@@ -0,0 +1,617 @@
+/*
+	This program and the accompanying materials are made available under the terms of the MIT
+	license (X11 license) which accompanies this distribution.
+	
+	Author: Christoff Bürger
+*/
+
+package pmchess.uci;
+
+import java.io.*;
+
+import pmchess.logic.*;
+
+/*
+	Universal Chess Interface (UCI) front-end of the pmChess engine, such that it can be used by
+	tournament managers and analysis programs. Supported commands are 'uci', 'debug' (ignored),
+	'isready', 'setoption' ('Hash', 'Threads', 'BookFile' and 'TablebasePath'), 'ucinewgame',
+	'position', 'go' ('depth', 'movetime', 'wtime', 'btime', 'winc', 'binc', 'movestogo',
+	'infinite' and 'ponder'), 'ponderhit', 'stop' and 'quit'.
+	
+	Commands are read and answered by the thread calling 'run' (the input/output thread).
+	Searches are run by a search thread: it searches increasing depths (iterative deepening),
+	each by analysis tasks of a 'SearchScheduler' splitting the root moves among 'Threads'
+	workers (cf. 'Search.analysis_task'). The input/output thread therefore answers commands
+	immediately, also while searching; a 'stop' just wakes up the search thread, which cancels
+	its tasks and answers with the best move of its last finished depth. Like the protocol
+	demands, options cannot be set while searching; such 'setoption' commands are ignored.
+	Invalid commands are reported by 'info string' and ignored.
+	
+	Depths are plies searched like in UCI (i.e., depth n are 'Search.analysis_task' depth
+	n - 1, which evaluates after its root moves and n - 1 further plies). Mates (also of
+	tablebases) are reported as 'score mate' (cf. 'Search.mate_plies').
+*/
+public final class UCI
+{
+	private static final int max_depth = 32;
+	private static final int hash_default = 16; // Megabytes of the evaluation cache.
+	private static final int hash_max = 4096;
+	private static final int threads_max = 256;
+	private static final int moves_to_go_default = 30;
+	private static final long time_margin = 50000000l; // 50ms left for communication.
+	
+	private final BufferedReader input;
+	private final PrintStream output;
+	
+	/*
+		All following fields are guarded by the lock; output while searching is locked as well:
+	*/
+	private final Object lock =
+		new Object();
+	private int hash =
+		hash_default;
+	private int threads =
+		1;
+	private Evaluator evaluator =
+		null; // Created on demand, such that options apply.
+	private SearchScheduler scheduler =
+		null; // Created on demand, such that options apply.
+	private OpeningBook opening_book =
+		null; // Probed by searches not infinite or pondering (cf. 'BookFile' option).
+	private Tablebase tablebase =
+		null; // Probed by all searches (cf. 'TablebasePath' option).
+	private Board board =
+		new Board();
+	private Go go =
+		null; // Current search, if any.
+	
+	private UCI(final BufferedReader input, final PrintStream output)
+	{
+		this.input = input;
+		this.output = output;
+	}
+	
+	/*
+		Answer the UCI commands of the given input until it ends or 'quit' is requested.
+	*/
+	public static void run(final BufferedReader input, final PrintStream output)
+		throws IOException
+	{
+		final var uci =
+			new UCI(input, output);
+		try
+		{
+			uci.process();
+		}
+		finally
+		{
+			synchronized (uci.lock)
+			{
+				if (uci.go != null)
+				{
+					uci.go.stop(false);
+				}
+				if (uci.scheduler != null)
+				{
+					uci.scheduler.shutdown();
+				}
+			}
+		}
+	}
+	
+	private void process() throws IOException
+	{
+		for (var line = input.readLine(); line != null; line = input.readLine())
+		{
+			final var command =
+				line.trim().split("\\s+", 2);
+			final var arguments =
+				command.length > 1 ? command[1] : "";
+			switch (command[0])
+			{
+			case "uci":
+				print("id name pmChess " + pmchess.pmChess.version);
+				print("id author Christoff Bürger");
+				print("option name Hash type spin default " + hash_default
+					+ " min 1 max " + hash_max);
+				print("option name Threads type spin default 1 min 1 max " + threads_max);
+				print("option name Ponder type check default false");
+				print("option name BookFile type string default <empty>");
+				print("option name TablebasePath type string default <empty>");
+				print("uciok");
+				break;
+			case "isready":
+				print("readyok");
+				break;
+			case "setoption":
+				set_option(arguments);
+				break;
+			case "ucinewgame":
+				synchronized (lock)
+				{
+					stop(false);
+					evaluator = null; // Forget evaluations of previous games.
+					board = new Board();
+				}
+				break;
+			case "position":
+				set_position(arguments);
+				break;
+			case "go":
+				go(arguments);
+				break;
+			case "ponderhit":
+				synchronized (lock)
+				{
+					if (go != null)
+					{
+						go.ponder_hit();
+					}
+				}
+				break;
+			case "stop":
+				stop(true);
+				break;
+			case "quit":
+				return;
+			default: // 'debug', empty lines and unknown commands are ignored.
+			}
+		}
+	}
+	
+	private void print(final String message)
+	{
+		synchronized (lock)
+		{
+			output.println(message);
+			output.flush();
+		}
+	}
+	
+	private void set_option(final String arguments)
+	{
+		synchronized (lock)
+		{
+			if (go != null)
+			{
+				print("info string setoption ignored while searching");
+				return;
+			}
+		}
+		final var option =
+			arguments.split("\\s+", 4);
+		if (option.length != 4 || !option[0].equals("name") || !option[2].equals("value"))
+		{
+			print("info string invalid option " + arguments);
+			return;
+		}
+		final var name =
+			option[1].toLowerCase();
+		if (name.equals("bookfile"))
+		{
+			set_opening_book(option[3].trim());
+			return;
+		}
+		if (name.equals("tablebasepath"))
+		{
+			set_tablebase(option[3].trim());
+			return;
+		}
+		if (!name.equals("hash") && !name.equals("threads"))
+		{
+			return; // E.g., 'Ponder', which just informs that pondering may be used.
+		}
+		final int value;
+		try
+		{
+			value = Integer.parseInt(option[3]);
+		}
+		catch (final NumberFormatException exception)
+		{
+			print("info string invalid option value " + option[3]);
+			return;
+		}
+		synchronized (lock)
+		{
+			if (name.equals("hash"))
+			{
+				hash = Math.min(Math.max(value, 1), hash_max);
+				evaluator = null;
+			}
+			else
+			{
+				threads = Math.min(Math.max(value, 1), threads_max);
+				if (scheduler != null)
+				{
+					scheduler.shutdown();
+					scheduler = null;
+				}
+			}
+		}
+	}
+	
+	private void set_opening_book(final String file)
+	{
+		OpeningBook opening_book = null;
+		if (!file.isEmpty() && !file.equals("<empty>"))
+		{
+			try
+			{
+				opening_book = OpeningBook.open(java.nio.file.Path.of(file));
+			}
+			catch (final Exception exception)
+			{
+				print("info string invalid opening book " + file);
+			}
+		}
+		synchronized (lock)
+		{
+			this.opening_book = opening_book;
+		}
+	}
+	
+	private void set_tablebase(final String directory)
+	{
+		Tablebase tablebase = null;
+		if (!directory.isEmpty() && !directory.equals("<empty>"))
+		{
+			try
+			{
+				tablebase = Tablebase.open(java.nio.file.Path.of(directory));
+			}
+			catch (final Exception exception)
+			{
+				print("info string invalid tablebases " + directory);
+			}
+		}
+		synchronized (lock)
+		{
+			this.tablebase = tablebase;
+		}
+	}
+	
+	private void set_position(final String arguments)
+	{
+		try
+		{
+			// 'Engine' requests are positions without 'fen' prefix:
+			final var position =
+				Engine.position(arguments.startsWith("fen ")
+					? arguments.substring(4)
+					: arguments);
+			synchronized (lock)
+			{
+				board = position;
+			}
+		}
+		catch (final IllegalArgumentException exception)
+		{
+			print("info string " + exception.getMessage());
+		}
+		catch (final RuntimeException exception)
+		{ // Ignore positions failing otherwise, like invalid ones:
+			print("info string invalid position " + arguments + " (" + exception + ")");
+		}
+	}
+	
+	private void stop(final boolean report)
+	{
+		synchronized (lock)
+		{
+			if (go != null)
+			{
+				go.stop(report);
+				go = null;
+			}
+		}
+	}
+	
+	private void go(final String arguments)
+	{
+		final var fields =
+			arguments.isBlank() ? new String[0] : arguments.trim().split("\\s+");
+		var depth = max_depth;
+		var infinite = fields.length == 0;
+		var ponder = false;
+		var move_time = -1l;
+		var time = -1l;
+		var increment = 0l;
+		var moves_to_go = moves_to_go_default;
+		synchronized (lock)
+		{
+			stop(true);
+			try
+			{
+				for (var i = 0; i < fields.length; i++)
+				{
+					switch (fields[i])
+					{
+					case "depth":
+						depth = Math.min(Math.max(Integer.parseInt(fields[++i]), 1), max_depth);
+						break;
+					case "movetime":
+						move_time = Long.parseLong(fields[++i]);
+						break;
+					case "wtime":
+					case "btime":
+						final var player_time =
+							Long.parseLong(fields[++i]);
+						if (fields[i - 1].equals("wtime") == board.player())
+						{
+							time = player_time;
+						}
+						break;
+					case "winc":
+					case "binc":
+						final var player_increment =
+							Long.parseLong(fields[++i]);
+						if (fields[i - 1].equals("winc") == board.player())
+						{
+							increment = player_increment;
+						}
+						break;
+					case "movestogo":
+						moves_to_go = Math.max(Integer.parseInt(fields[++i]), 1);
+						break;
+					case "infinite":
+						infinite = true;
+						break;
+					case "ponder":
+						ponder = true;
+						break;
+					default: // E.g., 'searchmoves', 'nodes' or 'mate', which are not supported.
+					}
+				}
+			}
+			catch (final RuntimeException exception)
+			{
+				print("info string invalid go " + arguments);
+				print("bestmove 0000");
+				return;
+			}
+			
+			// Time budget in nanoseconds, or -1 if unlimited:
+			var budget = -1l;
+			if (move_time >= 0)
+			{
+				budget = Math.max(move_time * 1000000l - time_margin, 1000000l);
+			}
+			else if (time >= 0)
+			{
+				budget = Math.max(
+					  Math.min(
+						  (time / moves_to_go + increment * 3 / 4) * 1000000l
+						, time * 1000000l - time_margin)
+					, 1000000l);
+			}
+			if (evaluator == null)
+			{
+				// Cache entries are 16 bytes; hence, 2^16 entries are a megabyte:
+				evaluator = new HandcraftedEvaluator(
+					  false
+					, 0
+					, new EvaluationCache(16 + 31 - Integer.numberOfLeadingZeros(hash)));
+			}
+			if (scheduler == null)
+			{
+				scheduler = new SearchScheduler(threads);
+			}
+			go = new Go(board.fork(), depth, budget, infinite, ponder);
+			final var search_thread =
+				new Thread(go, "pmChess UCI search");
+			search_thread.setDaemon(true);
+			search_thread.start();
+		}
+	}
+	
+	/*
+		A search started by 'go', run by its own search thread. All fields are guarded by the
+		lock of the 'UCI'.
+	*/
+	private final class Go implements Runnable
+	{
+		private final Board board;
+		private final int depth_limit;
+		private final long budget;
+		private boolean infinite;
+		private boolean ponder;
+		
+		private long start_time =
+			System.nanoTime();
+		private boolean stop_requested = false;
+		private boolean report = true; // Report best move when stopped.
+		
+		private SearchTask[] tasks = null; // Tasks of the current depth.
+		private int tasks_running = 0;
+		private int best_move = 0; // Best move of the last finished depth.
+		private final SearchStatistics statistics = // Of all finished depths, if enabled.
+			SearchStatistics.enabled ? new SearchStatistics() : null;
+		
+		private Go(
+			  final Board board
+			, final int depth_limit
+			, final long budget
+			, final boolean infinite
+			, final boolean ponder)
+		{
+			this.board = board;
+			this.depth_limit = depth_limit;
+			this.budget = budget;
+			this.infinite = infinite;
+			this.ponder = ponder;
+		}
+		
+		private void stop(final boolean report)
+		{
+			stop_requested = true;
+			this.report = report;
+			lock.notifyAll();
+		}
+		
+		/*
+			The opponent played the expected move: continue as normal search from now on.
+		*/
+		private void ponder_hit()
+		{
+			ponder = false;
+			start_time = System.nanoTime();
+			lock.notifyAll();
+		}
+		
+		/*
+			Time left in nanoseconds until the search must stop; 'Long.MAX_VALUE' if unlimited.
+		*/
+		private long time_left()
+		{
+			return infinite || ponder || budget < 0
+				? Long.MAX_VALUE
+				: budget - (System.nanoTime() - start_time);
+		}
+		
+		@Override public void run()
+		{
+			final var legal_moves =
+				board.legal_moves();
+			synchronized (lock)
+			{
+				// Book and tablebase moves are played without search (except when analysing or
+				// pondering):
+				var known_move =
+					infinite || ponder || opening_book == null ? 0 : opening_book.move(board);
+				if (known_move == 0 && !infinite && !ponder && tablebase != null)
+				{
+					known_move = tablebase.move(board);
+				}
+				best_move = known_move;
+				for (var depth = 1;
+					depth <= depth_limit && legal_moves.length > 0 && known_move == 0;
+					depth++)
+				{
+					// Deeper searches take much longer; do not start them without enough time:
+					if (stop_requested || (depth > 1 && time_left() < budget / 2))
+					{
+						break;
+					}
+					final var parts =
+						Math.min(threads, legal_moves.length);
+					tasks = new SearchTask[parts];
+					tasks_running = parts;
+					for (var part = 0; part < parts; part++)
+					{
+						tasks[part] = Search.analysis_task(
+							  board.fork()
+							, evaluator
+							, tablebase
+							, depth - 1
+							, part
+							, parts
+							, (final SearchTask task) ->
+							{
+								synchronized (lock)
+								{
+									tasks_running--;
+									lock.notifyAll();
+								}
+							});
+						scheduler.submit(tasks[part]);
+					}
+					while (tasks_running > 0 && !stop_requested && time_left() > 0)
+					{
+						wait_for(time_left());
+					}
+					if (tasks_running > 0)
+					{ // Stopped or out of time:
+						for (final var task : tasks)
+						{
+							task.cancel();
+						}
+						break;
+					}
+					var best_task =
+						tasks[0];
+					for (final var task : tasks)
+					{
+						if (task.best_move() != 0 && task.best_score() > best_task.best_score())
+						{
+							best_task = task;
+						}
+					}
+					if (best_task.best_move() != 0)
+					{
+						best_move = best_task.best_move();
+					}
+					if (statistics != null)
+					{
+						for (final var task : tasks)
+						{
+							statistics.add(task.statistics());
+						}
+					}
+					output.println("info depth " + depth
+						+ " score " + score(best_task.best_score())
+						+ " time " + (System.nanoTime() - start_time) / 1000000l
+						+ " pv " + Move.coordinate_notation(best_move != 0
+							? best_move
+							: legal_moves[0]));
+					output.flush();
+				}
+				// Infinite searches and pondering report only when stopped:
+				while ((infinite || ponder) && !stop_requested)
+				{
+					wait_for(Long.MAX_VALUE);
+				}
+				if (!report)
+				{
+					return;
+				}
+				if (best_move == 0 && legal_moves.length > 0)
+				{ // No depth finished or all moves lose:
+					best_move = legal_moves[0];
+				}
+				if (statistics != null)
+				{
+					output.println("info string statistics " + statistics);
+				}
+				output.println("bestmove " + (best_move == 0
+					? "0000"
+					: Move.coordinate_notation(best_move)));
+				output.flush();
+				if (go == this)
+				{
+					go = null;
+				}
+			}
+		}
+		
+		/*
+			UCI score ('cp' or 'mate' in moves) of the given search score.
+		*/
+		private static String score(final int score)
+		{
+			final var mate_plies =
+				Search.mate_plies(score);
+			return mate_plies == 0
+				? "cp " + HandcraftedEvaluator.centipawns(score)
+				: "mate " + (mate_plies > 0 ? (mate_plies + 1) / 2 : -((1 - mate_plies) / 2));
+		}
+		
+		private void wait_for(final long nanoseconds)
+		{
+			try
+			{
+				if (nanoseconds == Long.MAX_VALUE)
+				{
+					lock.wait();
+				}
+				else
+				{
+					lock.wait(Math.max(nanoseconds / 1000000l, 1l));
+				}
+			}
+			catch (final InterruptedException exception)
+			{
+				stop_requested = true;
+			}
+		}
+	}
+}